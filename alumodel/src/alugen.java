@@ -0,0 +1,48 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+import java.io.IOException;
+
+import alumodel.StimulusGenerator;
+
+/**
+ * @author Raul Vidal Ortiz
+ *
+ */
+public class alugen {
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1 || args.length > 3) {
+			System.err.println("Usage: java -jar alugen.jar <vectors.txt> [random pairs per aluctl] [seed]");
+			System.exit(1);
+		}
+		long randomcount = args.length > 1 ? Long.parseLong(args[1]) : 65536;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		try {
+			long records = new StimulusGenerator(seed).generate(args[0], randomcount);
+			System.out.println(records + " test vectors written to " + args[0]);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println(e.getMessage());
+			System.err.println("Error while writing test vectors");
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package alumodel;
+
+/**
+ * 
+ * @author raul
+ *
+ * Golden model of the ALU in work/alu.vhd.
+ * For every aluctl value it computes res and the carry, zero, neg and ovfl
+ * flags the way the testbench expects them. carry is the unsigned carry
+ * out of bit 31, result(32) of full_adder, and also ovfl for ADD natural:
+ * 
+ * 0000 AND		0001 OR		0010 XOR
+ * 0011 ADD (integer)	0100 ADD (natural)	0101 SUB
+ * 0110 Compare equal (res is 1 or 0)	others: res is 0
+ * 
+ * Flags are packed in an int using the CARRY, ZERO, NEG and OVFL masks.
+ * The bulk evaluate method works on whole operand arrays with one 
+ * branch-free loop per operation, which the JIT turns into SIMD code.
+ */
+public final class AluModel {
+	public static final int AND		= 0x0;
+	public static final int OR		= 0x1;
+	public static final int XOR		= 0x2;
+	public static final int ADD		= 0x3;
+	public static final int ADDU	= 0x4;
+	public static final int SUB		= 0x5;
+	public static final int CMPEQ	= 0x6;
+	public static final int numops	= 16;
+	
+	public static final int CARRY	= 0x1;
+	public static final int ZERO	= 0x2;
+	public static final int NEG		= 0x4;
+	public static final int OVFL	= 0x8;
+	
+	private AluModel() {}
+	
+	public static int result(int op1, int op2, int aluctl) {
+		switch (aluctl) {
+			case AND:	return op1 & op2;
+			case OR:	return op1 | op2;
+			case XOR:	return op1 ^ op2;
+			case ADD:
+			case ADDU:	return op1 + op2;
+			case SUB:	return op1 - op2;
+			case CMPEQ:	return op1 == op2 ? 1 : 0;
+		}
+		return 0;
+	}
+	
+	public static int flags(int op1, int op2, int aluctl) {
+		int[] a = {op1}, b = {op2}, res = new int[1], flg = new int[1];
+		evaluate(aluctl, a, b, res, flg, 1);
+		return flg[0];
+	}
+	
+	/* Evaluates the first n operand pairs for one aluctl value. */
+	public static void evaluate(int aluctl, int[] op1, int[] op2, int[] res, int[] flags, int n) {
+		switch (aluctl) {
+			case AND:
+				for (int i = 0; i < n; i++) {
+					res[i] = op1[i] & op2[i];
+					flags[i] = zero(res[i]);
+				}
+				break;
+			case OR:
+				for (int i = 0; i < n; i++) {
+					res[i] = op1[i] | op2[i];
+					flags[i] = zero(res[i]);
+				}
+				break;
+			case XOR:
+				for (int i = 0; i < n; i++) {
+					res[i] = op1[i] ^ op2[i];
+					flags[i] = zero(res[i]);
+				}
+				break;
+			case ADD:
+				for (int i = 0; i < n; i++) {
+					int a = op1[i], b = op2[i], r = a + b;
+					res[i] = r;
+					flags[i] = carry(a, b, r) | zero(r) | ((r >>> 31) << 2) 
+							| ((((r ^ a) & (r ^ b)) >>> 31) << 3);
+				}
+				break;
+			case ADDU:
+				for (int i = 0; i < n; i++) {
+					int a = op1[i], b = op2[i], r = a + b;
+					int c = carry(a, b, r);
+					res[i] = r;
+					flags[i] = c | zero(r) | (c << 3);
+				}
+				break;
+			case SUB:
+				/* Subtraction is performed as op1 + not(op2) + 1 */
+				for (int i = 0; i < n; i++) {
+					int a = op1[i], b = ~op2[i], r = a + b + 1;
+					res[i] = r;
+					flags[i] = carry(a, b, r) | zero(r) | ((r >>> 31) << 2) 
+							| ((((r ^ a) & (r ^ b)) >>> 31) << 3);
+				}
+				break;
+			case CMPEQ:
+				for (int i = 0; i < n; i++) {
+					int r = op1[i] == op2[i] ? 1 : 0;
+					res[i] = r;
+					flags[i] = zero(r);
+				}
+				break;
+			default:
+				for (int i = 0; i < n; i++) {
+					res[i] = 0;
+					flags[i] = ZERO;
+				}
+		}
+	}
+	
+	/* Carry out of bit 31 of a + b (+ carry in) given the 32 bit sum r */
+	private static int carry(int a, int b, int r) {
+		return ((a & b) | ((a | b) & ~r)) >>> 31;
+	}
+	
+	private static int zero(int r) {
+		return r == 0 ? ZERO : 0;
+	}
+}
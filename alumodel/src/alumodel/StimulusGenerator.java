@@ -0,0 +1,131 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package alumodel;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 
+ * @author raul
+ *
+ * Generates stimulus records for tb_alu.vhd together with the outputs
+ * expected from the golden model. Each line holds, separated by spaces:
+ * 
+ * op1 (hex)  op2 (hex)  aluctl (binary)  carry  zero  neg  ovfl  res (hex)
+ * 
+ * which is the field order of the testbench pattern records, so it can be
+ * read back with textio hread/read. For every aluctl value all pairs of
+ * corner-case operands are emitted, followed by pseudo-random pairs.
+ * Records are formatted into a reusable byte buffer, in blocks, so 
+ * millions of them can be streamed without creating garbage.
+ */
+public class StimulusGenerator {
+	private static final int blocksize = 4096;
+	private static final int recordsize = 2*9 + 5 + 4*2 + 9;
+	private static final byte[] hexdigits = "0123456789ABCDEF".getBytes();
+	private static final int[] corners = {
+		0x00000000, 0x00000001, 0x00000002, 0x7FFFFFFF, 0x80000000, 0x80000001,
+		0xFFFFFFFF, 0xFFFFFFFE, 0x55555555, 0xAAAAAAAA, 0x0000FFFF, 0xFFFF0000,
+		0x00008000, 0x40000000, 0x3FFFFFFF, 0xC0000000
+	};
+	
+	private int[] op1 = new int[blocksize];
+	private int[] op2 = new int[blocksize];
+	private int[] res = new int[blocksize];
+	private int[] flags = new int[blocksize];
+	private byte[] line = new byte[blocksize*recordsize];
+	private long seed;
+	
+	public StimulusGenerator(long seed) {
+		this.seed = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+	}
+	
+	/* Writes the corner cases plus randomcount random pairs per aluctl value
+	 * and returns the number of records written.
+	 */
+	public long generate(String path, long randomcount) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16);
+		long records = 0;
+		try {
+			for (int aluctl = 0; aluctl < AluModel.numops; aluctl++) {
+				int n = 0;
+				for (int a : corners) {
+					for (int b : corners) {
+						op1[n] = a;
+						op2[n] = b;
+						if (++n == blocksize) { records += emit(out, aluctl, n); n = 0; }
+					}
+				}
+				for (long i = 0; i < randomcount; i++) {
+					op1[n] = nextInt();
+					op2[n] = nextInt();
+					if (++n == blocksize) { records += emit(out, aluctl, n); n = 0; }
+				}
+				records += emit(out, aluctl, n);
+			}
+		} finally {
+			out.close();
+		}
+		return records;
+	}
+	
+	private int emit(OutputStream out, int aluctl, int n) throws IOException {
+		AluModel.evaluate(aluctl, op1, op2, res, flags, n);
+		int pos = 0;
+		for (int i = 0; i < n; i++) {
+			pos = hex(op1[i], pos);
+			pos = hex(op2[i], pos);
+			for (int bit = 3; bit >= 0; bit--)
+				line[pos++] = (byte) ('0' + ((aluctl >> bit) & 1));
+			line[pos++] = ' ';
+			pos = flag(flags[i], AluModel.CARRY, pos);
+			pos = flag(flags[i], AluModel.ZERO, pos);
+			pos = flag(flags[i], AluModel.NEG, pos);
+			pos = flag(flags[i], AluModel.OVFL, pos);
+			pos = hex(res[i], pos);
+			line[pos-1] = '\n';
+		}
+		out.write(line, 0, pos);
+		return n;
+	}
+	
+	private int hex(int value, int pos) {
+		for (int shift = 28; shift >= 0; shift -= 4)
+			line[pos++] = hexdigits[(value >>> shift) & 0xF];
+		line[pos++] = ' ';
+		return pos;
+	}
+	
+	private int flag(int value, int mask, int pos) {
+		line[pos++] = (value & mask) != 0 ? (byte) '1' : (byte) '0';
+		line[pos++] = ' ';
+		return pos;
+	}
+	
+	/* xorshift64*, good enough for stimulus and reproducible from the seed */
+	private int nextInt() {
+		seed ^= seed >>> 12;
+		seed ^= seed << 25;
+		seed ^= seed >>> 27;
+		return (int) ((seed * 0x2545F4914F6CDD1DL) >>> 32);
+	}
+}
@@ -20,7 +20,18 @@
  * 
  */
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import assembler.AssemblerParser;
+import assembler.IntelHexWriter;
+import assembler.ObjectWriter;
+import assembler.PipelineModel;
+import assembler.Profile;
+import assembler.RawObjectWriter;
+import assembler.SparseObjectWriter;
+import assembler.VhdlInitWriter;
 
 /**
  * @author Raul Vidal Ortiz
@@ -31,9 +42,123 @@ public class asm {
 	 * @param args
 	 */
 	public static void main(String[] args) {
+		try {
+			if (!assemble(args)) System.exit(1);
+		} catch (IllegalArgumentException e) {
+			usage();
+		}
+	}
+	
+	/* Runs the job described by a command line (options and file names).
+	 * Returns false if the source could not be assembled or the output not
+	 * written, with the reason in AssemblerParser.getLastError(). Also run 
+	 * by asmd for every request it receives.
+	 */
+	public static Boolean assemble(String[] args) throws IllegalArgumentException {
+		String mapfile = null;
+		String profilefile = null;
+		String listingfile = null;
+		String hexfile = null;
+		String vhdfile = null;
+		String sparsefile = null;
+		String pipelinefile = null;
+		Boolean relocatable = false;
+		Boolean schedule = false;
+		Boolean optimize = false;
+		Boolean thread = false;
+		Boolean datalayout = false;
+		Boolean codelayout = false;
+		Boolean done;
+		int i = 0;
+		while (i < args.length && args[i].startsWith("-")) {
+			if (args[i].equals("-c")) { relocatable = true; i++; continue; }
+			if (args[i].equals("-schedule")) { schedule = true; i++; continue; }
+			if (args[i].equals("-peephole")) { optimize = true; i++; continue; }
+			if (args[i].equals("-thread")) { thread = true; i++; continue; }
+			if (args[i].equals("-datalayout")) { datalayout = true; i++; continue; }
+			if (args[i].equals("-codelayout")) { codelayout = true; i++; continue; }
+			if (i+1 >= args.length) throw new IllegalArgumentException("Missing argument for " + args[i]);
+			if (args[i].equals("-map")) mapfile = args[++i];
+			else if (args[i].equals("-profile")) profilefile = args[++i];
+			else if (args[i].equals("-listing")) listingfile = args[++i];
+			else if (args[i].equals("-hex")) hexfile = args[++i];
+			else if (args[i].equals("-vhd")) vhdfile = args[++i];
+			else if (args[i].equals("-sparse")) sparsefile = args[++i];
+			else if (args[i].equals("-pipeline")) pipelinefile = args[++i];
+			else throw new IllegalArgumentException("Unknown option " + args[i]);
+			i++;
+		}
+		if (args.length - i != 2 || ((listingfile != null || codelayout) && profilefile == null)
+				|| (profilefile != null && listingfile == null && !datalayout && !codelayout))
+			throw new IllegalArgumentException("Wrong arguments");
 		AssemblerParser assembler = AssemblerParser.getAssemblerParser();
-		assembler.parseFile(args[0]);
-		assembler.dumpObjFile(args[1]);
+		assembler.setRelocatable(relocatable);
+		if (!assembler.parseFile(args[i])) return false;
+		if (optimize && !assembler.optimize()) return false;
+		if (thread && !assembler.threadJumps()) return false;
+		if (schedule) {
+			try {
+				assembler.schedule(pipelinefile == null ? new PipelineModel() : PipelineModel.load(pipelinefile));
+			} catch (IOException e) {
+				System.err.println(e.getMessage());
+				System.err.println("Error while reading pipeline description " + pipelinefile);
+				return false;
+			}
+		}
+		/* Read once: -codelayout moves its counts along with the code, for -listing */
+		Profile profile = null;
+		try {
+			if (profilefile != null) profile = Profile.load(profilefile, assembler.getTextBase());
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Error while reading profile " + profilefile);
+			return false;
+		}
+		if (datalayout && !assembler.layoutData(profile)) return false;
+		if (codelayout && !assembler.layoutCode(profile)) return false;
+		if (relocatable) done = assembler.dumpRelocatableObject(args[i+1]);
+		else {
+			List<ObjectWriter> writers = new ArrayList<ObjectWriter>();
+			try {
+				writers.add(new RawObjectWriter(args[i+1]));
+				if (hexfile != null) writers.add(new IntelHexWriter(hexfile));
+				if (vhdfile != null) writers.add(new VhdlInitWriter(vhdfile));
+				if (sparsefile != null) writers.add(new SparseObjectWriter(sparsefile));
+				done = assembler.dumpObjFile(writers);
+			} catch (IOException e) {
+				System.err.println(e.getMessage());
+				System.err.println("Error while opening file for writing");
+				for (ObjectWriter w : writers) {
+					try {
+						w.close();
+					} catch (IOException c) {
+					}
+				}
+				return false;
+			}
+		}
+		if (mapfile != null) assembler.dumpLineMap(mapfile);
+		if (listingfile != null) assembler.dumpAnnotatedListing(listingfile, profile);
+		return done;
+	}
+	
+	private static void usage() {
+		System.err.println("Usage: java -jar asm.jar [options] <source.asm> <output.bin>");
+		System.err.println("Options:");
+		System.err.println("  -c                write a relocatable object for the linker instead");
+		System.err.println("  -peephole         remove instructions that have no effect");
+		System.err.println("  -thread           make branches to jmp go to its target directly");
+		System.err.println("  -schedule         reorder instructions to hide pipeline latencies");
+		System.err.println("  -pipeline <file>  latencies used by -schedule (properties file)");
+		System.err.println("  -datalayout       group the data used together in cache lines (by -profile if given)");
+		System.err.println("  -codelayout       reorder the basic blocks after -profile, hot paths falling through");
+		System.err.println("  -hex <file>       also write the image in Intel HEX format");
+		System.err.println("  -vhd <file>       also write a textio memory file (address word per line)");
+		System.err.println("  -sparse <file>    also write a sparse image ((address, length, bytes) records and runs)");
+		System.err.println("  -map <file>       write the address to source line map");
+		System.err.println("  -profile <file>   execution profile (pc count [misses] per line), for -datalayout, -codelayout or -listing");
+		System.err.println("  -listing <file>   write the source listing annotated with -profile");
+		System.exit(1);
 	}
 
 }
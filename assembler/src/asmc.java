@@ -0,0 +1,77 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * @author Raul Vidal Ortiz
+ *
+ * Client for asmd: takes the same arguments as asm and has the service
+ * run them. File names are made absolute, since the service does not run
+ * in the caller's directory.
+ */
+public class asmc {
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		Path socket = asmd.defaultSocket();
+		int i = 0;
+		if (args.length > 1 && args[0].equals("-socket")) {
+			socket = Paths.get(args[1]);
+			i = 2;
+		}
+		if (i == args.length) usage();
+		StringBuilder request = new StringBuilder();
+		for (; i < args.length; i++) {
+			request.append(args[i].startsWith("-") ? args[i] : new File(args[i]).getAbsolutePath());
+			request.append(i == args.length-1 ? '\n' : '\t');
+		}
+		String response = null;
+		try {
+			SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+			OutputStream out = Channels.newOutputStream(channel);
+			out.write(request.toString().getBytes("UTF-8"));
+			out.flush();
+			response = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), "UTF-8")).readLine();
+			channel.close();
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Cannot reach asmd on " + socket);
+			System.exit(1);
+		}
+		if (response == null || !response.equals("ok")) {
+			System.err.println(response == null ? "No answer from asmd" : response);
+			System.exit(1);
+		}
+	}
+	
+	private static void usage() {
+		System.err.println("Usage: java -jar asmc.jar [-socket <path>] <asm arguments>");
+		System.exit(1);
+	}
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jdk.net.ExtendedSocketOptions;
+
+import assembler.AssemblerParser;
+import assembler.Instruction;
+
+/**
+ * @author Raul Vidal Ortiz
+ *
+ * Assembler service. Keeps one JVM running so that each assembly costs
+ * milliseconds instead of a JVM startup. Listens on a Unix domain socket 
+ * that only its owner may use, as every request reads and writes files with
+ * the service's permissions; every request is one line with the asm command
+ * line arguments separated by tabs, and is answered with a line "ok" or 
+ * "error <message>". Several requests may be sent over one connection. 
+ * Connections are served by a pool of threads, each with its own 
+ * AssemblerParser.
+ */
+public class asmd {
+	private static final String[] mnemonics = {"nop", "halt", "addd", "subd", "movd", 
+		"movi", "movhi", "ld", "sd", "jmp", "beq"};
+	
+	/* ~/.asmd/socket, in a directory only its owner can enter */
+	public static Path defaultSocket() {
+		return Paths.get(System.getProperty("user.home"), ".asmd", "socket");
+	}
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		Path socket = defaultSocket();
+		Integer threads = Runtime.getRuntime().availableProcessors();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-socket") && i+1 < args.length) socket = Paths.get(args[++i]).toAbsolutePath();
+				else if (args[i].equals("-j") && i+1 < args.length) threads = Integer.parseInt(args[++i]);
+				else usage();
+			}
+		} catch (NumberFormatException e) {
+			usage();
+		}
+		/* Load the instruction classes, and compile their operand patterns, 
+		 * before the first request.
+		 */
+		for (String m : mnemonics) Instruction.NewInstruction(m);
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			ServerSocketChannel server = bind(socket);
+			final UserPrincipal owner = Files.getOwner(socket);
+			System.err.println("asmd listening on " + socket);
+			while (true) {
+				final SocketChannel client = server.accept();
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						serve(client, owner);
+					}
+				});
+			}
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Error while listening on " + socket);
+			pool.shutdown();
+			System.exit(1);
+		}
+	}
+	
+	/* Binds the socket and leaves it readable and writable by its owner 
+	 * only. A stale socket left by an asmd that did not exit cleanly is 
+	 * replaced; anything else at that path is left alone.
+	 */
+	private static ServerSocketChannel bind(final Path socket) throws IOException {
+		Path dir = socket.getParent();
+		if (socket.equals(defaultSocket()) && !Files.isDirectory(dir))
+			Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+		if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) {
+			if (!Files.readAttributes(socket, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther())
+				throw new IOException(socket + " exists and is not a socket");
+			if (listening(socket)) throw new IOException("Another asmd is listening on " + socket);
+			Files.delete(socket);
+		}
+		ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		server.bind(UnixDomainSocketAddress.of(socket), 64);
+		Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				try {
+					Files.deleteIfExists(socket);
+				} catch (IOException e) {
+				}
+			}
+		});
+		return server;
+	}
+	
+	private static Boolean listening(Path socket) {
+		try {
+			SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	private static void serve(SocketChannel client, UserPrincipal owner) {
+		try {
+			if (!fromOwner(client, owner)) {
+				System.err.println("Refused a connection from another user");
+				return;
+			}
+			BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), "UTF-8"));
+			Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(client), "UTF-8"));
+			String request;
+			while ((request = in.readLine()) != null) {
+				if (request.trim().isEmpty()) continue;
+				out.write(handle(request.split("\t")));
+				out.write('\n');
+				out.flush();
+			}
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+		} finally {
+			try {
+				client.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+	
+	/* Checks the peer credentials as well, where the platform gives them */
+	private static Boolean fromOwner(SocketChannel client, UserPrincipal owner) throws IOException {
+		try {
+			return client.getOption(ExtendedSocketOptions.SO_PEERCRED).user().getName().equals(owner.getName());
+		} catch (UnsupportedOperationException e) {
+			return true;
+		}
+	}
+	
+	private static String handle(String[] args) {
+		String error;
+		try {
+			if (asm.assemble(args)) return "ok";
+			error = AssemblerParser.getAssemblerParser().getLastError();
+			if (error == null) error = "Failed, see the asmd log";
+		} catch (IllegalArgumentException e) {
+			error = e.getMessage();
+		} catch (Exception e) {
+			error = e.toString();
+		}
+		return "error " + error.replace('\n', ' ');
+	}
+	
+	private static void usage() {
+		System.err.println("Usage: java -jar asmd.jar [-socket <path>] [-j <threads>]");
+		System.exit(1);
+	}
+}
@@ -22,8 +22,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -31,8 +35,6 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.BufferedReader;
 import java.io.FileWriter;
 import java.io.IOException;
 
@@ -40,95 +42,180 @@ public class AssemblerParser {
 	private ArrayList<Instruction> instructions;
 	private HashMap<String,Data> datas;
 	private HashMap<String,Data> codelabels;
+	private HashSet<String> globals;
+	private Boolean relocatable;
+	private SourceReader reader;
+	private Integer database;
+	private Integer datasize;
+	private Integer textbase;
+	private DataSegment segment;
+	private String lasterror;
+	private Integer synthesized;
+	private EncodingCache encodings;
 	
 	public static final Integer DATASEGSIZE = 512;
-	private static AssemblerParser parser;
+	/* Distinct instruction lines whose encoding is kept (see EncodingCache) */
+	public static final Integer ENCODINGCACHESIZE = 1 << 12;
+	private static final Pattern stringData = Pattern.compile("\"(.*?)\"",Pattern.CASE_INSENSITIVE);
+	private static final Pattern intData = Pattern.compile("-?[0-9]{1,}\\w",Pattern.CASE_INSENSITIVE);
+	private static final Pattern stringOp = Pattern.compile("(nop|halt|addd|subd|movd|movi|movhi|ld|sd|jmp|beq)",Pattern.CASE_INSENSITIVE);
+	private static final Pattern dataSection = Pattern.compile("\\.data(\\s.*)?");
+	private static final Pattern textSection = Pattern.compile("\\.text(\\s.*)?");
+	/* One parser per thread, so that the label lookups made by the 
+	 * instructions while parsing refer to the file that thread assembles
+	 * (see asmd, which assembles several files at once).
+	 */
+	private static final ThreadLocal<AssemblerParser> parser = new ThreadLocal<AssemblerParser>() {
+		@Override
+		protected AssemblerParser initialValue() {
+			return new AssemblerParser();
+		}
+	};
 	
 	/* We need two passes: 1 for labels, another for replacing them with 
 	 * actual offsets and address
 	 */
 	public static AssemblerParser getAssemblerParser() {
-		if (parser != null) return parser;
-		else {
-			parser = new AssemblerParser();
-			return parser;
-		}
+		return parser.get();
 	}
 	
 	private AssemblerParser() {
 		this.instructions = new ArrayList<Instruction>();
 		this.datas = new HashMap<String,Data>();
 		this.codelabels = new HashMap<String,Data>();
+		this.globals = new HashSet<String>();
+		this.relocatable = false;
+		this.reader = new SourceReader();
+		this.database = 0;
+		this.datasize = DATASEGSIZE;
+		this.textbase = DATASEGSIZE;
+		this.segment = new DataSegment();
+		this.synthesized = 0;
+		this.encodings = new EncodingCache(ENCODINGCACHESIZE);
+	}
+	
+	public Integer getDataBase() {
+		return this.database;
+	}
+	
+	public Integer getTextBase() {
+		return this.textbase;
+	}
+	
+	/* The text as assembled, in address order */
+	public List<Instruction> getInstructions() {
+		return Collections.unmodifiableList(instructions);
+	}
+	
+	/* In relocatable mode labels not defined in the file are accepted as
+	 * external symbols, to be resolved by the Linker (see dumpRelocatableObject).
+	 */
+	public void setRelocatable(Boolean relocatable) {
+		this.relocatable = relocatable;
 	}
 	
-	public void parseFile(String path) {
-		BufferedReader filereader;
+	/* Message of the last error that made parseFile or an object dump fail */
+	public String getLastError() {
+		return this.lasterror;
+	}
+	
+	/* Parses a whole file, replacing whatever was parsed before. Returns 
+	 * false if it could not be assembled.
+	 */
+	public Boolean parseFile(String path) {
+		List<SourceReader.SourceLine> lines;
 		String line;
 		String label;
-		String type;
 		String data;
 		String instop;
+		Integer size;
+		Long[] values;
 		Integer lastdataaddress = 0;
 		Integer lastcodeaddress = DATASEGSIZE;
 		Integer counter = 1;
+		Integer[] bases;
+		String location = "1";
 		Boolean textfound = false;
 		Boolean datafound = false;
-		Pattern stringData = Pattern.compile("\"(.*?)\"",Pattern.CASE_INSENSITIVE);
-		Pattern intData = Pattern.compile("-?[0-9]{1,}\\w",Pattern.CASE_INSENSITIVE);
-		Pattern stringOp = Pattern.compile("(nop|halt|addd|subd|movd|movi|movhi|ld|sd|jmp|beq)",Pattern.CASE_INSENSITIVE);
 		Matcher stringMatcher;
 		Matcher intMatcher;
 		Matcher opMatcher;
 		try {
+			instructions.clear();
+			datas.clear();
+			codelabels.clear();
+			globals.clear();
+			lasterror = null;
+			database = 0;
+			datasize = null;
+			textbase = DATASEGSIZE;
+			segment = new DataSegment();
+			lines = reader.read(path);
 			/* Pass 1 */
-			filereader = new BufferedReader(new FileReader(path));
-			while ((line = filereader.readLine()) != null) {
-				if (line.isEmpty()) {counter++; continue;}
-				else if (line.matches("\\.data")) { datafound = true; counter++;continue;}
-				else if (line.matches("\\.text") && !datafound) {
-					counter++;
-					filereader.close();
+			for (SourceReader.SourceLine sl : lines) {
+				line = sl.getText();
+				counter = sl.getLine();
+				location = sl.toString();
+				if (line.isEmpty()) continue;
+				else if (line.trim().startsWith(".global")) {
+					for (String g : line.trim().substring(".global".length()).split("[\\s,]+"))
+						if (!g.isEmpty()) globals.add(g);
+					continue;
+				}
+				else if (dataSection.matcher(line).matches()) {
+					bases = parseSectionArgs(line, ".data");
+					if (bases.length > 0) database = bases[0];
+					if (bases.length > 1) datasize = bases[1];
+					lastdataaddress = database;
+					datafound = true;
+					continue;
+				}
+				else if (textSection.matcher(line).matches() && !datafound) {
 					throw new IllegalAsmNoSectionException(".data");
-				} else if (line.matches("\\.text") && datafound) {
+				} else if (textSection.matcher(line).matches() && datafound) {
+					bases = parseSectionArgs(line, ".text");
+					if (bases.length > 0) textbase = bases[0];
+					lastcodeaddress = textbase;
 					textfound = true;
-					counter++;
 					continue;
 				} else if (datafound && !textfound) {
 					label = line.split(":")[0];
+					if (label.equals(line)) label = null;
 					if (line.contains(".string")) {
-						type = "string";
 						stringMatcher = stringData.matcher(line);
-						if (stringMatcher.find()) {
-							data = stringMatcher.group();
-							data = AssemblerParser.padString(data);
-							if (!datas.containsKey(label))
-								datas.put(label,new Data(data,lastdataaddress,type,label));
-							else {
-								filereader.close();
-								throw new IllegalAsmException("Repeated label. Check your code. Line "+counter);
-							}
-						} else {
-							filereader.close();
+						if (!stringMatcher.find())
 							throw new IllegalAsmException("No valid string variable found at line "+counter);
-						}
-						lastdataaddress += data.length()+data.length()%Opcodes.bytesinst;
+						data = stringMatcher.group();
+						size = segment.appendString(data);
+						defineData(new Data(data,lastdataaddress,"string",label,size), counter);
 					} else if (line.contains(".int")) {
-						type = "int";
 						intMatcher = intData.matcher(line);
-						if (intMatcher.find()) {
-							data = intMatcher.group();
-							if (!datas.containsKey(label))
-								datas.put(label,new Data(data,lastdataaddress,type,label));
-							else {
-								filereader.close();
-								throw new IllegalAsmException("Repeated label. Check your code. Line "+counter);
-							}
-						} else {
-							filereader.close();
+						if (!intMatcher.find())
 							throw new IllegalAsmException("No valid string variable found at line "+counter);
-						}
-						lastdataaddress += Opcodes.bytesinst;
-					}
+						data = intMatcher.group();
+						segment.appendInt(Integer.parseInt(data));
+						size = Opcodes.bytesinst;
+						defineData(new Data(data,lastdataaddress,"int",label,size), counter);
+					} else if (line.contains(".word")) {
+						data = directiveArgs(line, ".word");
+						values = parseDataArgs(data, ".word", 1, Integer.MAX_VALUE);
+						for (Long v : values) segment.appendInt(v.intValue());
+						size = values.length*Opcodes.bytesinst;
+						defineData(new Data(data,lastdataaddress,"word",label,size), counter);
+					} else if (line.contains(".space")) {
+						data = directiveArgs(line, ".space");
+						values = parseDataArgs(data, ".space", 1, 1);
+						size = checkDataSize(values[0] + (Opcodes.bytesinst - values[0]%Opcodes.bytesinst)%Opcodes.bytesinst);
+						segment.appendRun(size, 0);
+						defineData(new Data(data,lastdataaddress,"space",label,size), counter);
+					} else if (line.contains(".fill")) {
+						data = directiveArgs(line, ".fill");
+						values = parseDataArgs(data, ".fill", 1, 2);
+						size = checkDataSize(values[0]*Opcodes.bytesinst);
+						segment.appendRun(size, values.length > 1 ? values[1].intValue() : 0);
+						defineData(new Data(data,lastdataaddress,"fill",label,size), counter);
+					} else size = 0;
+					lastdataaddress += size;
 				} else if (textfound && datafound) {
 					label = line.split(":")[0];
 					if (!label.isEmpty() && !label.equals(line)) {
@@ -136,104 +223,678 @@ public class AssemblerParser {
 						if (!codelabels.containsKey(label)) {
 							codelabels.put(label,new Data(data,lastcodeaddress,null,label));
 						} else {
-							filereader.close();
 							throw new IllegalAsmException("Repeated label. Check your code. Line "+counter);
 						}
 					}
 					lastcodeaddress += Opcodes.bytesinst;
 				} else {
-					filereader.close();
 					throw new IllegalAsmException("Undefined section error. "+ 
 					"No matching case for processing code. " + 
 							"Please respect section order.");
 				}
-				counter++;
 			}
-			filereader.close();
-			if (lastdataaddress > lastcodeaddress || lastdataaddress%Opcodes.bytesinst != 0)
-				throw new IllegalAsmDataSizeException();
-			counter = 1;
+			if (datasize == null)
+				datasize = textbase > database ? textbase - database : Integer.MAX_VALUE - database;
+			if (lastdataaddress - database > datasize || lastdataaddress%Opcodes.bytesinst != 0)
+				throw new IllegalAsmDataSizeException(datasize);
+			if (overlaps(lastcodeaddress))
+				throw new IllegalAsmException("The data and text segments overlap");
 			/* Pass 2 */
-			filereader = new BufferedReader(new FileReader(path));
 			textfound = false;
-			lastcodeaddress = DATASEGSIZE;
-			while ((line = filereader.readLine()) != null) {
+			lastcodeaddress = textbase;
+			for (SourceReader.SourceLine sl : lines) {
+				line = sl.getText();
+				if (textfound) {
+					Instruction inst = encodings.get(line, lastcodeaddress);
+					if (inst != null) {
+						inst.setSourceInfo(sl.getLine(), line.trim(), null);
+						instructions.add(inst);
+						lastcodeaddress+=Opcodes.bytesinst;
+						continue;
+					}
+				}
+				counter = sl.getLine();
+				location = sl.toString();
 				if (!textfound) {
-					if (line.matches(".text")) {
+					if (textSection.matcher(line).matches()) {
 						textfound = true;
-						counter++;
 						continue;
 					}
-				} else if (textfound && line.matches(".text")) {counter++;continue;}
-				else if (line.isEmpty()) {counter++; continue;}
-				else if (line.equals(".data") && textfound) {
-					filereader.close();
+				} else if (textfound && textSection.matcher(line).matches()) continue;
+				else if (line.isEmpty() || line.trim().startsWith(".global")) continue;
+				else if (dataSection.matcher(line).matches() && textfound) {
 					throw new IllegalAsmMisplacedSectionException(".data");
 				} else {
-					opMatcher = stringOp.matcher(line);
-					opMatcher.reset();
-					if (opMatcher.find()) instop = opMatcher.group();
-					else {
-						filereader.close();
-						throw new IllegalAsmException("No opcode found");
+					/* The preprocessor has already found the mnemonic, if it 
+					 * is the first word of the statement
+					 */
+					instop = sl.getOpcode();
+					if (instop == null) {
+						opMatcher = stringOp.matcher(line);
+						if (opMatcher.find()) instop = opMatcher.group().toLowerCase();
+						else {
+							throw new IllegalAsmException("No opcode found");
+						}
 					}
-					instop = instop.toLowerCase();
+					label = line.split(":")[0];
+					if (label.isEmpty() || label.equals(line)) label = null;
 					Instruction inst = Instruction.NewInstruction(instop, lastcodeaddress);
+					inst.setSourceInfo(counter, line.trim(), label);
 					inst.parseInstruction(line);
+					encodings.put(line, inst);
 					instructions.add(inst);
 					lastcodeaddress+=Opcodes.bytesinst;
 				}
-				counter++;
 			}
-			filereader.close();
+			return relax();
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 			System.err.println(e.getMessage());
 			System.err.println("Error opening file. File not found");
-			System.err.println("Error while parsing line " + counter);
+			System.err.println("Error while parsing line " + location);
+			lasterror = "File not found: " + e.getMessage();
 		} catch (IllegalAsmException e){
 			e.printStackTrace();
 			System.err.println(e.getMessage());
-			System.err.println("Error while parsing line " + counter);
+			System.err.println("Error while parsing line " + location);
+			lasterror = e.getMessage() + " (line " + location + ")";
 		} catch (BadInstructionException e) {
 			e.printStackTrace();
 			System.err.println(e.getMessage());
-			System.err.println("Error while parsing line " + counter);
+			System.err.println("Error while parsing line " + location);
+			lasterror = e.getMessage() + " (line " + location + ")";
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.err.println(e.getMessage());
-			System.err.println("Error while parsing line " + counter);
+			System.err.println("Error while parsing line " + location);
+			lasterror = e + " (line " + location + ")";
 		}
+		return false;
+	}
+	
+	/* True if the text section, ending at textend, runs into the space of 
+	 * the data section.
+	 */
+	private Boolean overlaps(Integer textend) {
+		return database < textend && textbase < database + datasize && textend > textbase;
+	}
+	
+	private void defineData(Data d, Integer counter) throws IllegalAsmException {
+		if (d.getLabel() == null) return;
+		if (datas.containsKey(d.getLabel()))
+			throw new IllegalAsmException("Repeated label. Check your code. Line "+counter);
+		datas.put(d.getLabel(), d);
+	}
+	
+	private static String directiveArgs(String line, String directive) {
+		return line.substring(line.indexOf(directive) + directive.length()).trim();
 	}
 	
-	public void dumpObjFile(String path) {
+	/* Comma separated operands of .word, .space and .fill, in decimal 
+	 * (optionally with #) or 0x hexadecimal. Values up to 0xFFFFFFFF are 
+	 * accepted so that word patterns can be written in hexadecimal.
+	 */
+	private static Long[] parseDataArgs(String args, String directive, int min, int max) throws IllegalAsmException {
+		String[] fields = args.isEmpty() ? new String[0] : args.split("\\s*,\\s*");
+		if (fields.length < min || fields.length > max)
+			throw new IllegalAsmException("Wrong number of " + directive + " arguments: " + args);
+		Long[] values = new Long[fields.length];
 		try {
-			FileOutputStream writer = new FileOutputStream(path);
-			List<Data> datacol = new ArrayList<Data>(datas.values());
-			Collections.sort(datacol);
-			Data lastdata = null;
-			for (Data d : datacol) {
-				if (d.getType().equals("int")) {
-					Integer number = Integer.parseInt(d.getData());
-					writer.write(AssemblerParser.intToByteArray(number));
-				} else {
-					Integer length = d.getData().length();
-					String content = d.getData();
-					if (length%Opcodes.bytesinst != 0) content = AssemblerParser.padString(content);
-					writer.write(content.getBytes());
-				}
-				lastdata = d;
+			for (int i = 0; i < fields.length; i++) {
+				values[i] = Long.decode(fields[i].startsWith("#") ? fields[i].substring(1) : fields[i]);
+				if (values[i] < Integer.MIN_VALUE || values[i] > 0xFFFFFFFFL)
+					throw new IllegalAsmException("Value out of range in " + directive + ": " + fields[i]);
 			}
-			if (lastdata != null) {
-				Integer dataend = lastdata.getAddress()+lastdata.getData().length();
-				if ( dataend < 512) {
-					for (int i = 0; i < 512-dataend; i++) {
-						writer.write("0".getBytes());
+		} catch (NumberFormatException e) {
+			throw new IllegalAsmException("Invalid " + directive + " arguments: " + args);
+		}
+		if (!directive.equals(".word") && values[0] < 0)
+			throw new IllegalAsmException("Negative " + directive + " size: " + args);
+		return values;
+	}
+	
+	private static Integer checkDataSize(Long size) throws IllegalAsmException {
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalAsmException("Data item too large: " + size + " bytes");
+		return size.intValue();
+	}
+	
+	/* Reorders the instructions inside each basic block to hide pipeline
+	 * latencies (see Scheduler). Returns the estimated cycles saved.
+	 */
+	public Integer schedule(PipelineModel model) {
+		return new Scheduler(model).schedule(instructions);
+	}
+	
+	/* Removes the instructions that have no effect (see Peephole) and lays
+	 * the text out again. Skipped, with a warning, if a branch is written
+	 * with a literal offset, as it could no longer be fixed up. Returns false
+	 * if the program no longer assembles.
+	 */
+	public Boolean optimize() {
+		if (literalBranch("instructions not optimized")) return true;
+		List<Instruction> kept = new Peephole().optimize(instructions);
+		if (kept.size() == instructions.size()) return true;
+		return relayout(kept, new HashMap<String,Instruction>());
+	}
+	
+	/* Lays the labelled data items out again, in the order given by 
+	 * DataLayout, with the unlabelled items that follow each one. Items 
+	 * of a cache line or more start a line and smaller ones are kept within
+	 * one, the next small items that fit filling the gap before a line,
+	 * unless the padding does not fit in the data section (or the
+	 * object is relocatable), when they are only reordered. Anything before
+	 * the first label stays first. Skipped, with a warning, if code uses a
+	 * literal data address. Returns false if the program no longer
+	 * assembles.
+	 */
+	public Boolean layoutData(Profile profile) {
+		List<Data> items = new ArrayList<Data>(datas.values());
+		if (items.isEmpty() || literalData("data not reordered")) return true;
+		Collections.sort(items, new Comparator<Data>() {
+			@Override
+			public int compare(Data a, Data b) {
+				int c = a.getAddress().compareTo(b.getAddress());
+				return c != 0 ? c : a.getLabel().compareTo(b.getLabel());
+			}
+		});
+		List<String> labels = new ArrayList<String>(items.size());
+		HashMap<String,Integer> extent = new HashMap<String,Integer>();
+		for (int i = 0; i < items.size(); i++) {
+			Integer end = i+1 < items.size() ? items.get(i+1).getAddress() : database + segment.getSize();
+			labels.add(items.get(i).getLabel());
+			extent.put(items.get(i).getLabel(), end - items.get(i).getAddress());
+		}
+		List<String> order = new DataLayout().order(instructions, labels, profile);
+		int line = Opcodes.l1dlinesize;
+		for (Boolean align : relocatable ? new Boolean[] {false} : new Boolean[] {true, false}) {
+			DataSegment laid = new DataSegment();
+			HashMap<String,Integer> addresses = new HashMap<String,Integer>();
+			laid.appendSegment(segment, 0, items.get(0).getAddress() - database);
+			List<String> pending = new ArrayList<String>(order);
+			while (!pending.isEmpty()) {
+				String l = pending.get(0);
+				int inline = (database + laid.getSize()) % line;
+				if (align && inline != 0 && (extent.get(l) >= line || inline + extent.get(l) > line)) {
+					for (String s : pending) {
+						if (extent.get(s) > 0 && inline + extent.get(s) <= line) {
+							l = s;
+							break;
+						}
 					}
+					if (l == pending.get(0)) laid.appendRun(line - inline, 0);
+				}
+				pending.remove(l);
+				addresses.put(l, database + laid.getSize());
+				laid.appendSegment(segment, datas.get(l).getAddress() - database, extent.get(l));
+			}
+			if (laid.getSize() > datasize || (database < textbase && database + laid.getSize() > textbase)) {
+				System.err.println("Warning: no room to align the data to cache lines, only reordered");
+				continue;
+			}
+			for (String l : order) {
+				Data d = datas.get(l);
+				datas.put(l, new Data(d.getData(), addresses.get(l), d.getType(), l, d.getSize()));
+			}
+			segment = laid;
+			break;
+		}
+		return relink();
+	}
+	
+	/* Reorders the basic blocks after an execution profile of the program
+	 * (see CodeLayout). A block that no longer falls through to the one after
+	 * it gets a jmp to it, and a final jmp to the block placed after its 
+	 * own is dropped. Skipped, with a warning, if a branch is written with a
+	 * literal offset. The counts of the profile are moved along with their 
+	 * instructions. Returns false if the program no longer assembles.
+	 */
+	public Boolean layoutCode(Profile profile) {
+		if (instructions.isEmpty() || literalBranch("blocks not reordered")) return true;
+		IdentityHashMap<Instruction,Integer> profiled = new IdentityHashMap<Instruction,Integer>();
+		for (Instruction i : instructions) profiled.put(i, i.getInstAddress());
+		List<List<Instruction>> blocks = CodeLayout.blocks(instructions);
+		HashMap<Integer,Integer> blockat = CodeLayout.blockAddresses(blocks);
+		List<Integer> order = new CodeLayout().order(blocks, profile);
+		List<Instruction> layout = new ArrayList<Instruction>(instructions.size());
+		HashMap<String,Instruction> newlabels = new HashMap<String,Instruction>();
+		Instruction current = null;
+		try {
+			for (int k = 0; k < order.size(); k++) {
+				List<Instruction> block = blocks.get(order.get(k));
+				Integer next = k+1 < order.size() ? order.get(k+1) : null;
+				current = block.get(block.size()-1);
+				Integer target = CodeLayout.target(current, blockat);
+				if (current instanceof Jmp && block.size() > 1 && target != null && target.equals(next))
+					layout.addAll(block.subList(0, block.size()-1));
+				else layout.addAll(block);
+				Integer successor = order.get(k) + 1;
+				if (!CodeLayout.fallsThrough(block) || successor == blocks.size() || successor.equals(next)) continue;
+				Instruction first = blocks.get(successor).get(0);
+				String label = first.getCodeLabel();
+				if (label == null) {
+					label = newLabel("layout", first);
+					newlabels.put(label, first);
+				}
+				layout.add(synthesize("jmp " + label, current));
+			}
+		} catch (BadInstructionException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Error while laying out line " + current.getSourceLine());
+			lasterror = e.getMessage() + " (line " + current.getSourceLine() + ")";
+			return false;
+		}
+		if (!relayout(layout, newlabels) || !relax()) return false;
+		HashMap<Integer,Integer> moved = new HashMap<Integer,Integer>();
+		for (Instruction i : instructions)
+			if (profiled.containsKey(i)) moved.put(profiled.get(i), i.getInstAddress());
+		profile.relocate(moved);
+		return true;
+	}
+	
+	/* True, after a warning, if a jmp or beq is written with a literal 
+	 * offset, which could not be fixed up when moving the code.
+	 */
+	private Boolean literalBranch(String skipped) {
+		for (Instruction i : instructions) {
+			if ((i instanceof Beq || i instanceof Jmp) && i.getLabel().isEmpty()) {
+				System.err.println("Warning: branch with a literal offset at line " + i.getSourceLine() 
+						+ ", " + skipped);
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/* True, after a warning, if an ld or sd from r0, or a movi into a register
+	 * used as the base of an ld or sd, has a literal value inside the data 
+	 * section, which could not be fixed up when moving the data.
+	 */
+	private Boolean literalData(String skipped) {
+		HashSet<Integer> bases = new HashSet<Integer>();
+		for (Instruction i : instructions)
+			if ((i instanceof Ld || i instanceof Sd) && i.getRa() != 0) bases.add(i.getRa());
+		for (Instruction i : instructions) {
+			if (!i.getLabel().isEmpty()) continue;
+			Boolean address = ((i instanceof Ld || i instanceof Sd) && i.getRa() == 0) 
+					|| (i instanceof Movi && bases.contains(i.getRd()));
+			if (address && i.getOffset() >= database && i.getOffset() < database + segment.getSize()) {
+				System.err.println("Warning: literal data address at line " + i.getSourceLine() 
+						+ ", " + skipped);
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/* Makes every jmp or beq whose target is a jmp go directly to the end of
+	 * the chain of jmps, as long as a beq can still reach it.
+	 */
+	public Boolean threadJumps() {
+		HashMap<Integer,Instruction> at = new HashMap<Integer,Instruction>();
+		for (Instruction i : instructions) at.put(i.getInstAddress(), i);
+		try {
+			for (Instruction i : instructions) {
+				if (!(i instanceof Jmp || i instanceof Beq) || !codelabels.containsKey(i.getLabel())) continue;
+				String target = i.getLabel();
+				HashSet<Instruction> chain = new HashSet<Instruction>();
+				Instruction t = at.get(codelabels.get(target).getAddress());
+				while (t instanceof Jmp && codelabels.containsKey(t.getLabel()) && chain.add(t)) {
+					target = t.getLabel();
+					t = at.get(codelabels.get(target).getAddress());
+				}
+				if (target.equals(i.getLabel())) continue;
+				Integer offset = (codelabels.get(target).getAddress() - i.getInstAddress()) >> 2;
+				if (i instanceof Beq && (offset < Opcodes.limitnegoffset || offset > Opcodes.limitposoffset)) continue;
+				retarget(i, target);
+			}
+			return true;
+		} catch (BadInstructionException e) {
+			System.err.println(e.getMessage());
+			lasterror = e.getMessage();
+			return false;
+		}
+	}
+	
+	/* Rewrites every beq whose target is beyond its 14-bit offset as a beq
+	 * to a jmp placed after it, which is jumped over when not taken:
+	 * 
+	 *     beq rX, rY, far    ->        beq rX, rY, t
+	 *                                  jmp f
+	 *                              t:  jmp far
+	 *                              f:  ...
+	 * 
+	 * Each expansion moves the code after it, which may put other branches
+	 * out of range, so this is repeated until every branch fits. A beq at
+	 * the end of the text falls through to the end of the text.
+	 */
+	public Boolean relax() {
+		Instruction current = null;
+		try {
+			while (true) {
+				List<Instruction> layout = new ArrayList<Instruction>(instructions.size());
+				HashMap<String,Instruction> newlabels = new HashMap<String,Instruction>();
+				for (int i = 0; i < instructions.size(); i++) {
+					current = instructions.get(i);
+					layout.add(current);
+					if (current.isOffsetInRange()) continue;
+					if (!(current instanceof Beq))
+						throw new BadInstructionException("Branch target out of range");
+					String taken = newLabel("relaxt", current);
+					String fallthrough = newLabel("relaxf", current);
+					Instruction trampoline = synthesize("jmp " + current.getLabel(), current);
+					layout.add(synthesize("jmp " + fallthrough, current));
+					layout.add(trampoline);
+					retarget(current, taken);
+					newlabels.put(taken, trampoline);
+					newlabels.put(fallthrough, i+1 < instructions.size() ? instructions.get(i+1) : null);
+				}
+				if (newlabels.isEmpty()) return true;
+				if (!relayout(layout, newlabels)) return false;
+			}
+		} catch (BadInstructionException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Error while relaxing line " + current.getSourceLine());
+			lasterror = e.getMessage() + " (line " + current.getSourceLine() + ")";
+			return false;
+		}
+	}
+	
+	/* A code label not used by the program, temporarily at the address of
+	 * the given instruction. It is numbered with letters.
+	 */
+	private String newLabel(String prefix, Instruction near) {
+		String label;
+		do {
+			String number = "";
+			Integer n = synthesized++;
+			do {
+				number = (char) ('a' + n%26) + number;
+				n /= 26;
+			} while (n > 0);
+			label = prefix + number;
+		} while (codelabels.containsKey(label) || datas.containsKey(label));
+		codelabels.put(label, new Data(label, near.getInstAddress(), null, label));
+		return label;
+	}
+	
+	/* New instruction assembled from text, attributed to the source line of
+	 * the given instruction.
+	 */
+	private Instruction synthesize(String text, Instruction from) throws BadInstructionException {
+		Instruction inst = Instruction.NewInstruction(text.substring(0, text.indexOf(' ')), from.getInstAddress());
+		inst.setSourceInfo(from.getSourceLine(), text, null);
+		inst.parseInstruction(text);
+		return inst;
+	}
+	
+	private void retarget(Instruction inst, String label) throws BadInstructionException {
+		String text = inst instanceof Jmp ? "jmp " + label 
+				: "beq r" + inst.getRd() + ", r" + inst.getRa() + ", " + label;
+		inst.setTarget(text);
+		inst.parseInstruction(text);
+	}
+	
+	/* Replaces the text with the given instructions, which may be reordered,
+	 * new or fewer: gives them consecutive addresses from the text base,
+	 * moves every code label to the new address of the instruction it was on
+	 * (or of the next one kept, if it was removed), places newlabels on their
+	 * instructions (at the end of the text for null) and resolves label 
+	 * operands again.
+	 */
+	private Boolean relayout(List<Instruction> layout, Map<String,Instruction> newlabels) {
+		Integer end = textbase + layout.size()*Opcodes.bytesinst;
+		if (overlaps(end)) {
+			System.err.println("The data and text segments overlap");
+			lasterror = "The data and text segments overlap";
+			return false;
+		}
+		IdentityHashMap<Instruction,Integer> addresses = new IdentityHashMap<Instruction,Integer>();
+		for (int i = 0; i < layout.size(); i++) 
+			addresses.put(layout.get(i), textbase + i*Opcodes.bytesinst);
+		HashMap<Integer,Integer> moved = new HashMap<Integer,Integer>();
+		Integer next = end;
+		moved.put(textbase + instructions.size()*Opcodes.bytesinst, end);
+		for (int i = instructions.size()-1; i >= 0; i--) {
+			Instruction inst = instructions.get(i);
+			if (addresses.containsKey(inst)) next = addresses.get(inst);
+			moved.put(inst.getInstAddress(), next);
+		}
+		for (Data d : new ArrayList<Data>(codelabels.values())) {
+			Integer address = newlabels.containsKey(d.getLabel()) 
+					? (newlabels.get(d.getLabel()) == null ? end : addresses.get(newlabels.get(d.getLabel())))
+					: moved.containsKey(d.getAddress()) ? moved.get(d.getAddress()) : d.getAddress();
+			codelabels.put(d.getLabel(), new Data(d.getData(), address, d.getType(), d.getLabel()));
+		}
+		HashMap<Integer,String> labelat = new HashMap<Integer,String>();
+		for (Data d : codelabels.values()) {
+			Integer address = d.getAddress();
+			if (!labelat.containsKey(address) || d.getLabel().compareTo(labelat.get(address)) < 0)
+				labelat.put(address, d.getLabel());
+		}
+		for (Instruction inst : layout) {
+			inst.setInstAddress(addresses.get(inst));
+			inst.setCodeLabel(labelat.get(inst.getInstAddress()));
+		}
+		instructions = new ArrayList<Instruction>(layout);
+		return relink();
+	}
+	
+	/* Resolves the label operands of every instruction again, against the
+	 * current label and instruction addresses.
+	 */
+	public Boolean relink() {
+		Instruction current = null;
+		try {
+			for (Instruction i : instructions) {
+				current = i;
+				if (!i.getLabel().isEmpty()) i.parseInstruction(i.getText());
+			}
+			return true;
+		} catch (BadInstructionException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Error while relocating line " + current.getSourceLine());
+			lasterror = e.getMessage() + " (line " + current.getSourceLine() + ")";
+			return false;
+		}
+	}
+	
+	/* Optional arguments of a section line: ".data [base[, size]]" or
+	 * ".text [base]", in decimal (optionally with #) or 0x hexadecimal.
+	 */
+	private static Integer[] parseSectionArgs(String line, String section) throws IllegalAsmException {
+		String args = line.substring(section.length()).trim();
+		if (args.isEmpty()) return new Integer[0];
+		String[] fields = args.split("\\s*,\\s*");
+		Integer[] values = new Integer[fields.length];
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				String f = fields[i].startsWith("#") ? fields[i].substring(1) : fields[i];
+				if (f.toLowerCase().startsWith("0x")) values[i] = Integer.parseInt(f.substring(2), 16);
+				else values[i] = Integer.parseInt(f);
+				if (values[i] < 0 || values[i]%Opcodes.bytesinst != 0)
+					throw new IllegalAsmException("Section bases and sizes must be positive and word aligned");
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalAsmException("Invalid " + section + " arguments: " + args);
+		}
+		if (values.length > (section.equals(".data") ? 2 : 1))
+			throw new IllegalAsmException("Too many " + section + " arguments: " + args);
+		return values;
+	}
+	
+	public Boolean dumpObjFile(String path) {
+		try {
+			List<ObjectWriter> writers = new ArrayList<ObjectWriter>();
+			writers.add(new RawObjectWriter(path));
+			return dumpObjFile(writers);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println(e.getMessage());
+			System.err.println("Error while opening file for writing");
+			lasterror = "Cannot write " + path + ": " + e.getMessage();
+			return false;
+		}
+	}
+	
+	/* Emits the image once, in address order from address 0, feeding every
+	 * data item, every instruction word and the padding between them to all 
+	 * the writers, and closes them.
+	 */
+	public Boolean dumpObjFile(List<ObjectWriter> writers) {
+		Boolean done = false;
+		try {
+			Integer address = 0;
+			if (database <= textbase) {
+				address = dumpData(writers, address);
+				address = dumpText(writers, address);
+			} else {
+				address = dumpText(writers, address);
+				address = dumpData(writers, address);
+			}
+			done = true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println(e.getMessage());
+			System.err.println("Error while writing output file");
+			lasterror = "Error while writing output file: " + e.getMessage();
+		} finally {
+			for (ObjectWriter w : writers) {
+				try {
+					w.close();
+				} catch (IOException e) {
+					System.err.println(e.getMessage());
+					System.err.println("Error while closing output file");
+					lasterror = "Error while closing output file: " + e.getMessage();
+					done = false;
+				}
+			}
+		}
+		return done;
+	}
+	
+	private Integer dumpData(List<ObjectWriter> writers, Integer address) throws IOException {
+		address = dumpFill(writers, address, database);
+		segment.emit(writers, address);
+		return address + segment.getSize();
+	}
+	
+	private Integer dumpText(List<ObjectWriter> writers, Integer address) throws IOException {
+		address = dumpFill(writers, address, textbase);
+		for (Instruction i : instructions) {
+			Integer word = i.getBinaryRepresentation();
+			for (ObjectWriter w : writers) w.writeInstruction(i.getInstAddress(), word);
+			address += Opcodes.bytesinst;
+		}
+		return address;
+	}
+	
+	private Integer dumpFill(List<ObjectWriter> writers, Integer address, Integer end) throws IOException {
+		if (address < end) {
+			for (ObjectWriter w : writers) w.writeFill(address, end - address, (byte) '0');
+		}
+		return Math.max(address, end);
+	}
+	
+	/* Writes a relocatable object: the data and text segments without the
+	 * padding between them, every label as a symbol and a relocation for 
+	 * every instruction that references a label.
+	 */
+	public Boolean dumpRelocatableObject(String path) {
+		try {
+			int[] text = new int[instructions.size()];
+			List<ObjectFile.Relocation> relocations = new ArrayList<ObjectFile.Relocation>();
+			for (int i = 0; i < text.length; i++) {
+				Instruction inst = instructions.get(i);
+				if (inst.getLabel() != null && !inst.getLabel().isEmpty()) {
+					text[i] = inst.getUnresolvedBinaryRepresentation();
+					relocations.add(new ObjectFile.Relocation(i, inst.getLabel()));
+				} else text[i] = inst.getBinaryRepresentation();
+			}
+			List<ObjectFile.Symbol> symbols = new ArrayList<ObjectFile.Symbol>();
+			for (Data d : datas.values())
+				symbols.add(new ObjectFile.Symbol(d.getLabel(), 'D', globals.contains(d.getLabel()), 
+						d.getAddress() - database));
+			for (Data d : codelabels.values())
+				symbols.add(new ObjectFile.Symbol(d.getLabel(), 'T', globals.contains(d.getLabel()), 
+						d.getAddress() - textbase));
+			for (String g : globals)
+				if (!datas.containsKey(g) && !codelabels.containsKey(g))
+					System.err.println("Warning: .global " + g + " is not defined in this file");
+			new ObjectFile(segment.toByteArray(), text, symbols, relocations).write(path);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println(e.getMessage());
+			System.err.println("Error while opening file for writing");
+			lasterror = "Cannot write " + path + ": " + e.getMessage();
+			return false;
+		}
+	}
+	
+	/* Writes one line per instruction with its address, source line, the
+	 * label defined on that line (or "-") and the source text, so that
+	 * program counters can be mapped back to the assembly source.
+	 */
+	public void dumpLineMap(String path) {
+		try {
+			BufferedWriter writer = new BufferedWriter(new FileWriter(path));
+			for (Instruction i : instructions) {
+				String deflabel = i.getCodeLabel();
+				writer.write(String.format("0x%08x\t%d\t%s\t%s", i.getInstAddress(), i.getSourceLine(),
+						deflabel == null ? "-" : deflabel, i.getAnnotatedSource()));
+				writer.newLine();
+			}
+			writer.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println(e.getMessage());
+			System.err.println("Error while opening file for writing");
+		}
+	}
+	
+	/* Writes the source listing annotated with the execution counts (and
+	 * cache misses, when recorded) found in the given profile. Counts are
+	 * also summed per code label, and those sums listed first, hottest first.
+	 */
+	public void dumpAnnotatedListing(String path, Profile profile) {
+		try {
+			BufferedWriter writer = new BufferedWriter(new FileWriter(path));
+			long total = profile.getTotalCount();
+			List<String> regions = new ArrayList<String>();
+			final HashMap<String,Long> regioncounts = new HashMap<String,Long>();
+			String region = null;
+			for (Instruction i : instructions) {
+				if (i.getCodeLabel() != null) {
+					region = i.getCodeLabel();
+					regions.add(region);
+					regioncounts.put(region, 0L);
 				}
+				if (region != null)
+					regioncounts.put(region, regioncounts.get(region) + profile.getCount(i.getInstAddress()));
 			}
+			/* Stable, so regions with the same count stay in address order */
+			Collections.sort(regions, new Comparator<String>() {
+				@Override
+				public int compare(String a, String b) {
+					return regioncounts.get(b).compareTo(regioncounts.get(a));
+				}
+			});
+			writer.write(String.format("# %d instructions executed", total));
+			writer.newLine();
+			for (String r : regions) {
+				long c = regioncounts.get(r);
+				writer.write(String.format("# %-20s %14d %6.2f%%", r, c, total == 0 ? 0.0 : 100.0*c/total));
+				writer.newLine();
+			}
+			writer.newLine();
 			for (Instruction i : instructions) {
-				writer.write(AssemblerParser.intToByteArray(i.getBinaryRepresentation()));
+				long c = profile.getCount(i.getInstAddress());
+				writer.write(String.format("%14d %6.2f%% ", c, total == 0 ? 0.0 : 100.0*c/total));
+				if (profile.hasMisses())
+					writer.write(String.format("%10d ", profile.getMisses(i.getInstAddress())));
+				writer.write(String.format("0x%08x %5d  %s", i.getInstAddress(), i.getSourceLine(), i.getAnnotatedSource()));
+				writer.newLine();
 			}
 			writer.close();
 		} catch (IOException e) {
@@ -244,50 +905,54 @@ public class AssemblerParser {
 	}
 
 	public static boolean isDataLabel(String label) {
-		return parser.datas.containsKey(label);
+		return parser.get().datas.containsKey(label);
 	}
 	public static boolean isCodeLabel(String label) {
-		return parser.codelabels.containsKey(label);		
+		return parser.get().codelabels.containsKey(label);		
+	}
+	public static boolean isExternalLabel(String label) {
+		return parser.get().relocatable && !isDataLabel(label) && !isCodeLabel(label);
 	}
 
 	public static Integer getDataAddress(String label) {
-		return parser.datas.get(label).getAddress();
+		return parser.get().datas.get(label).getAddress();
 	}
 	public static Integer getCodeAddress(String label) {
-		return parser.codelabels.get(label).getAddress();
+		return parser.get().codelabels.get(label).getAddress();
 	}
 	
 	public static Integer getAddress(String label) {
 		Integer addr = null;
-		if (parser.datas.containsKey(label))
-			addr = parser.datas.get(label).getAddress();
-		else if (parser.codelabels.containsKey(label))
-			addr = parser.codelabels.get(label).getAddress();
+		if (parser.get().datas.containsKey(label))
+			addr = parser.get().datas.get(label).getAddress();
+		else if (parser.get().codelabels.containsKey(label))
+			addr = parser.get().codelabels.get(label).getAddress();
 		return addr;
 	}
 	
 	public static String getData(String label) {
 		String d = null;
-		if (parser.datas.containsKey(label))
-			d = parser.datas.get(label).getData();
-		else if (parser.codelabels.containsKey(label))
-			d = parser.codelabels.get(label).getData();
+		if (parser.get().datas.containsKey(label))
+			d = parser.get().datas.get(label).getData();
+		else if (parser.get().codelabels.containsKey(label))
+			d = parser.get().codelabels.get(label).getData();
 		return d;
 	}
 	
 	public static String getDataType(String label) {
-		if (parser.datas.containsKey(label))
-			return parser.datas.get(label).getType();
-		else if (parser.codelabels.containsKey(label))
-			return parser.codelabels.get(label).getType();
+		if (parser.get().datas.containsKey(label))
+			return parser.get().datas.get(label).getType();
+		else if (parser.get().codelabels.containsKey(label))
+			return parser.get().codelabels.get(label).getType();
 		else return null;
 	}
 	
 	public static String padString(String sequence) {
 		Integer padding = sequence.length()%Opcodes.bytesinst;
+		StringBuilder padded = new StringBuilder(sequence.length() + padding).append(sequence);
 		for (int i = 0; i < padding; i++)
-			sequence = sequence.concat("0");
-		return sequence;
+			padded.append('0');
+		return padded.toString();
 	}
 	
 	public static byte[] intToByteArray(Integer number) {
@@ -29,5 +29,20 @@ public class Beq extends MBIRtype {
 		return false;
 	}
 	
+	@Override
+	public Integer getDestRegister() {
+		return null;
+	}
+	
+	@Override
+	public Integer[] getSourceRegisters() {
+		return new Integer[] {this.rd, this.ra};
+	}
+	
+	@Override
+	public Boolean endsBasicBlock() {
+		return true;
+	}
+	
 	
 }
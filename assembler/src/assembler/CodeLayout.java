@@ -0,0 +1,163 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * 
+ * @author raul
+ *
+ * Orders the basic blocks of a program after an execution profile, so
+ * that the hot paths run straight through the L1 instruction cache. A 
+ * block starts at a labelled instruction and ends after a beq, jmp or 
+ * halt.
+ * 
+ * The edges a block can fall through to its successor on are its original
+ * fall through (the block after it, unless it ends with a jmp or halt) and
+ * the target of its final jmp, which can then be dropped. Their weights
+ * are estimated from the counts: a jmp or a plain fall through takes all
+ * the executions of the block, the fall through of a beq no more than the
+ * block after it has. Following Pettis and Hansen, chains of blocks are 
+ * joined along the heaviest edges first, when the edge goes from the tail
+ * of one chain to the head of another. The chain with the first block of
+ * the program stays first, the others follow hottest first, those never
+ * executed keep their order and a last block that runs off the end of the
+ * text stays last.
+ * 
+ * There is no bne, so a beq cannot be inverted to fall through to its
+ * target. Where a block no longer falls through to its successor, the
+ * caller adds a jmp (see AssemblerParser.layoutCode).
+ */
+public class CodeLayout {
+	
+	/* Splits the text into basic blocks, in order */
+	public static List<List<Instruction>> blocks(List<Instruction> instructions) {
+		List<List<Instruction>> blocks = new ArrayList<List<Instruction>>();
+		List<Instruction> block = null;
+		for (Instruction inst : instructions) {
+			if (block == null || inst.getCodeLabel() != null) {
+				if (block != null && !block.isEmpty()) blocks.add(block);
+				block = new ArrayList<Instruction>();
+			}
+			block.add(inst);
+			if (inst.endsBasicBlock()) {
+				blocks.add(block);
+				block = new ArrayList<Instruction>();
+			}
+		}
+		if (block != null && !block.isEmpty()) blocks.add(block);
+		return blocks;
+	}
+	
+	/* True if the block goes on to the next one in the text when its last
+	 * instruction does not branch.
+	 */
+	public static Boolean fallsThrough(List<Instruction> block) {
+		Instruction last = block.get(block.size()-1);
+		return !(last instanceof Jmp || last instanceof Halt);
+	}
+	
+	/* Index of the block a jmp or beq goes to, or null */
+	public static Integer target(Instruction branch, HashMap<Integer,Integer> blockat) {
+		if (!(branch instanceof Jmp || branch instanceof Beq) || !AssemblerParser.isCodeLabel(branch.getLabel())) 
+			return null;
+		return blockat.get(AssemblerParser.getAddress(branch.getLabel()));
+	}
+	
+	/* Block starting at each address */
+	public static HashMap<Integer,Integer> blockAddresses(List<List<Instruction>> blocks) {
+		HashMap<Integer,Integer> blockat = new HashMap<Integer,Integer>();
+		for (int b = 0; b < blocks.size(); b++) blockat.put(blocks.get(b).get(0).getInstAddress(), b);
+		return blockat;
+	}
+	
+	/* Returns the indices of the blocks in the order to lay them out */
+	public List<Integer> order(List<List<Instruction>> blocks, Profile profile) {
+		int n = blocks.size();
+		HashMap<Integer,Integer> blockat = blockAddresses(blocks);
+		final long[] count = new long[n];
+		for (int b = 0; b < n; b++) count[b] = profile.getCount(blocks.get(b).get(0).getInstAddress());
+		/* Candidate edges as {from, to, weight} */
+		List<long[]> edges = new ArrayList<long[]>();
+		for (int b = 0; b < n; b++) {
+			List<Instruction> block = blocks.get(b);
+			Instruction last = block.get(block.size()-1);
+			long executed = profile.getCount(last.getInstAddress());
+			if (last instanceof Jmp) {
+				Integer t = target(last, blockat);
+				if (t != null && block.size() > 1) edges.add(new long[] {b, t, executed});
+			} else if (fallsThrough(block) && b+1 < n) {
+				edges.add(new long[] {b, b+1, last instanceof Beq ? Math.min(executed, count[b+1]) : executed});
+			}
+		}
+		Collections.sort(edges, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] a, long[] b) {
+				if (a[2] != b[2]) return a[2] > b[2] ? -1 : 1;
+				return a[0] != b[0] ? (a[0] < b[0] ? -1 : 1) : (a[1] < b[1] ? -1 : a[1] > b[1] ? 1 : 0);
+			}
+		});
+		
+		int pinned = fallsThrough(blocks.get(n-1)) ? n-1 : -1;
+		int[] chainof = new int[n];
+		List<List<Integer>> chains = new ArrayList<List<Integer>>(n);
+		for (int b = 0; b < n; b++) {
+			chainof[b] = b;
+			List<Integer> c = new ArrayList<Integer>();
+			c.add(b);
+			chains.add(c);
+		}
+		for (long[] e : edges) {
+			int from = (int) e[0];
+			int to = (int) e[1];
+			if (e[2] == 0 || to == 0 || to == pinned) continue;
+			List<Integer> head = chains.get(chainof[from]);
+			List<Integer> tail = chains.get(chainof[to]);
+			if (head == tail || head.get(head.size()-1) != from || tail.get(0) != to) continue;
+			head.addAll(tail);
+			for (Integer b : tail) chainof[b] = chainof[from];
+		}
+		
+		List<List<Integer>> placed = new ArrayList<List<Integer>>();
+		for (int b = 0; b < n; b++) if (chainof[b] == b && b != chainof[0] && b != pinned) placed.add(chains.get(b));
+		final IdentityHashMap<List<Integer>,Long> heat = new IdentityHashMap<List<Integer>,Long>();
+		for (List<Integer> c : placed) {
+			long max = 0;
+			for (Integer b : c) max = Math.max(max, count[b]);
+			heat.put(c, max);
+		}
+		Collections.sort(placed, new Comparator<List<Integer>>() {
+			@Override
+			public int compare(List<Integer> a, List<Integer> b) {
+				return heat.get(b).compareTo(heat.get(a));
+			}
+		});
+		List<Integer> order = new ArrayList<Integer>(n);
+		order.addAll(chains.get(chainof[0]));
+		for (List<Integer> c : placed) order.addAll(c);
+		if (pinned > 0) order.add(pinned);
+		return order;
+	}
+}
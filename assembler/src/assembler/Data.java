@@ -23,11 +23,17 @@ public class Data implements Comparable<Data> {
 	private Integer startingaddress;
 	private String type;
 	private String label;
+	private Integer size;
 	public Data(String data, Integer lastdataaddress, String type, String label) {
+		this(data, lastdataaddress, type, label, 0);
+	}
+	
+	public Data(String data, Integer lastdataaddress, String type, String label, Integer size) {
 		this.data = data;
 		this.startingaddress = lastdataaddress;
 		this.type = type;
 		this.label = label;
+		this.size = size;
 	}
 	
 	public Boolean containsLabel(String lbl) {
@@ -45,6 +51,15 @@ public class Data implements Comparable<Data> {
 	public String getType() {
 		return this.type;
 	}
+	
+	public String getLabel() {
+		return this.label;
+	}
+	
+	/* Bytes the item takes in the data segment */
+	public Integer getSize() {
+		return this.size;
+	}
 
 	@Override
 	public int compareTo(Data o) {
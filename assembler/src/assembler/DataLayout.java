@@ -0,0 +1,175 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 
+ * @author raul
+ *
+ * Orders the data items so that the ones used together share L1 data
+ * cache lines. An instruction accesses an item when it names the item's 
+ * label (ld, sd, movi) or when it is a ld/sd whose base register was last
+ * set, going down the program, to the item's address by a movi or a movd.
+ * Each access weighs the execution count of the instruction in the 
+ * profile or, without one, 8 to the number of loops (ranges between a
+ * backward branch and its target) around it.
+ * 
+ * Two items accessed in the same basic block are affine, by the smaller of
+ * their weights in it. Starting from one chain per item, the chains of the
+ * most affine pairs are joined first, the hotter one ahead, as Pettis and
+ * Hansen do for code, and the chains are then placed hottest first. Items
+ * never accessed keep their order, after all the others.
+ */
+public class DataLayout {
+	/* Blocks touching more items than this only add to their heat */
+	private static final int maxpairs = 64;
+	private static final int maxdepth = 6;
+	private HashMap<String,Long> heat = new HashMap<String,Long>();
+	private HashMap<String,Long> affinity = new HashMap<String,Long>();
+	
+	/* Returns labels, given in address order, in the order to lay them out */
+	public List<String> order(List<Instruction> instructions, List<String> labels, Profile profile) {
+		Set<String> known = new HashSet<String>(labels);
+		LinkedHashMap<String,Long> block = new LinkedHashMap<String,Long>();
+		String[] base = new String[Opcodes.numregs];
+		int[] depth = profile == null ? loopDepth(instructions) : null;
+		heat.clear();
+		affinity.clear();
+		for (int i = 0; i < instructions.size(); i++) {
+			Instruction inst = instructions.get(i);
+			if (inst.getCodeLabel() != null) endBlock(block);
+			long weight = profile == null ? 1L << 3*Math.min(depth[i], maxdepth) 
+					: profile.getCount(inst.getInstAddress());
+			String label = known.contains(inst.getLabel()) ? inst.getLabel() : null;
+			String accessed = label;
+			if (accessed == null && (inst.readsMemory() || inst.writesMemory()) && inst.getRa() != 0)
+				accessed = base[inst.getRa()];
+			if (accessed != null && weight > 0) add(block, accessed, weight);
+			Integer d = inst.getDestRegister();
+			if (d != null) {
+				if (inst instanceof Movi) base[d] = label;
+				else if (inst instanceof Movd) base[d] = base[inst.getRa()];
+				else base[d] = null;
+			}
+			if (inst.endsBasicBlock()) endBlock(block);
+		}
+		endBlock(block);
+		
+		HashMap<String,List<String>> chain = new HashMap<String,List<String>>();
+		final IdentityHashMap<List<String>,Long> chainheat = new IdentityHashMap<List<String>,Long>();
+		List<List<String>> chains = new ArrayList<List<String>>();
+		for (String l : labels) {
+			if (!heat.containsKey(l)) continue;
+			List<String> c = new ArrayList<String>();
+			c.add(l);
+			chain.put(l, c);
+			chainheat.put(c, heat.get(l));
+			chains.add(c);
+		}
+		List<Map.Entry<String,Long>> pairs = new ArrayList<Map.Entry<String,Long>>(affinity.entrySet());
+		Collections.sort(pairs, new Comparator<Map.Entry<String,Long>>() {
+			@Override
+			public int compare(Map.Entry<String,Long> a, Map.Entry<String,Long> b) {
+				int c = b.getValue().compareTo(a.getValue());
+				return c != 0 ? c : a.getKey().compareTo(b.getKey());
+			}
+		});
+		for (Map.Entry<String,Long> p : pairs) {
+			String[] items = p.getKey().split(" ");
+			List<String> first = chain.get(items[0]);
+			List<String> second = chain.get(items[1]);
+			if (first == second) continue;
+			if (chainheat.get(second) > chainheat.get(first)) {
+				first = second;
+				second = chain.get(items[0]);
+			}
+			first.addAll(second);
+			for (String l : second) chain.put(l, first);
+			chainheat.put(first, chainheat.get(first) + chainheat.remove(second));
+		}
+		
+		Iterator<List<String>> it = chains.iterator();
+		while (it.hasNext()) if (!chainheat.containsKey(it.next())) it.remove();
+		Collections.sort(chains, new Comparator<List<String>>() {
+			@Override
+			public int compare(List<String> a, List<String> b) {
+				return chainheat.get(b).compareTo(chainheat.get(a));
+			}
+		});
+		List<String> order = new ArrayList<String>(labels.size());
+		for (List<String> c : chains) order.addAll(c);
+		for (String l : labels) if (!heat.containsKey(l)) order.add(l);
+		return order;
+	}
+	
+	/* Number of backward branches whose range covers each instruction */
+	private static int[] loopDepth(List<Instruction> instructions) {
+		HashMap<Integer,Integer> index = new HashMap<Integer,Integer>();
+		for (int i = 0; i < instructions.size(); i++) index.put(instructions.get(i).getInstAddress(), i);
+		int[] delta = new int[instructions.size()+1];
+		for (int i = 0; i < instructions.size(); i++) {
+			Instruction inst = instructions.get(i);
+			if (!(inst instanceof Jmp || inst instanceof Beq) || !AssemblerParser.isCodeLabel(inst.getLabel())) continue;
+			Integer target = index.get(AssemblerParser.getAddress(inst.getLabel()));
+			if (target == null || target > i) continue;
+			delta[target]++;
+			delta[i+1]--;
+		}
+		int[] depth = new int[instructions.size()];
+		int d = 0;
+		for (int i = 0; i < depth.length; i++) {
+			d += delta[i];
+			depth[i] = d;
+		}
+		return depth;
+	}
+	
+	private void endBlock(LinkedHashMap<String,Long> block) {
+		List<String> used = new ArrayList<String>(block.keySet());
+		for (String l : used) add(heat, l, block.get(l));
+		if (used.size() <= maxpairs) {
+			for (int i = 0; i < used.size(); i++) {
+				for (int j = i+1; j < used.size(); j++) {
+					String a = used.get(i);
+					String b = used.get(j);
+					String key = a.compareTo(b) < 0 ? a + " " + b : b + " " + a;
+					add(affinity, key, Math.min(block.get(a), block.get(b)));
+				}
+			}
+		}
+		block.clear();
+	}
+	
+	private static void add(Map<String,Long> map, String key, long value) {
+		Long old = map.get(key);
+		map.put(key, old == null ? value : old + value);
+	}
+}
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 
+ * @author raul
+ *
+ * Contents of the data section, built while parsing.
+ * Bytes given explicitly (.int, .word, .string) are appended to one 
+ * growable byte arena. Regions made of a repeated word (.space, .fill) are
+ * only described by their length and pattern and never materialized, so a
+ * program reserving large buffers costs memory for its real content only.
+ * 
+ * The segment is kept as a list of chunks in address order, each either a
+ * slice of the arena or a run, stored in parallel primitive arrays.
+ */
+public class DataSegment {
+	private byte[] arena;
+	private int arenalength;
+	private int[] chunkoffset;
+	private int[] chunklength;
+	private int[] chunkpattern;
+	private int chunks;
+	private int size;
+	
+	public DataSegment() {
+		this.arena = new byte[256];
+		this.chunkoffset = new int[16];
+		this.chunklength = new int[16];
+		this.chunkpattern = new int[16];
+		this.arenalength = 0;
+		this.chunks = 0;
+		this.size = 0;
+	}
+	
+	/* Size of the segment in bytes */
+	public int getSize() {
+		return this.size;
+	}
+	
+	/* Bytes actually held in memory, runs excluded */
+	public int getArenaSize() {
+		return this.arenalength;
+	}
+	
+	public void appendInt(int value) {
+		ensureArena(Opcodes.bytesinst);
+		arena[arenalength] = (byte) (value >> 24);
+		arena[arenalength+1] = (byte) (value >> 16);
+		arena[arenalength+2] = (byte) (value >> 8);
+		arena[arenalength+3] = (byte) value;
+		literal(Opcodes.bytesinst);
+	}
+	
+	/* Appends a string padded with '0' characters the way the assembler
+	 * always laid strings out, and returns the number of bytes it takes.
+	 */
+	public int appendString(String content) {
+		byte[] bytes = content.getBytes();
+		int padded = bytes.length + bytes.length%Opcodes.bytesinst;
+		padded += padded%Opcodes.bytesinst;
+		ensureArena(padded);
+		System.arraycopy(bytes, 0, arena, arenalength, bytes.length);
+		Arrays.fill(arena, arenalength + bytes.length, arenalength + padded, (byte) '0');
+		literal(padded);
+		return padded;
+	}
+	
+	/* Appends length bytes repeating the big-endian word pattern */
+	public void appendRun(int length, int pattern) {
+		if (length == 0) return;
+		if (chunks > 0 && chunkoffset[chunks-1] < 0 && chunkpattern[chunks-1] == pattern) {
+			chunklength[chunks-1] += length;
+		} else {
+			ensureChunks();
+			chunkoffset[chunks] = -1;
+			chunklength[chunks] = length;
+			chunkpattern[chunks] = pattern;
+			chunks++;
+		}
+		size += length;
+	}
+	
+	/* Appends length bytes of another segment starting at offset. Runs are
+	 * kept as runs, so offset must be word aligned.
+	 */
+	public void appendSegment(DataSegment from, int offset, int length) {
+		int start = 0;
+		for (int c = 0; c < from.chunks && length > 0; c++) {
+			int end = start + from.chunklength[c];
+			if (end > offset) {
+				int take = Math.min(end - offset, length);
+				if (from.chunkoffset[c] < 0) appendRun(take, from.chunkpattern[c]);
+				else {
+					ensureArena(take);
+					System.arraycopy(from.arena, from.chunkoffset[c] + offset - start, arena, arenalength, take);
+					literal(take);
+				}
+				offset += take;
+				length -= take;
+			}
+			start = end;
+		}
+	}
+	
+	/* Sends every chunk to the writers, the segment starting at base */
+	public void emit(List<ObjectWriter> writers, Integer base) throws IOException {
+		int address = base;
+		for (int c = 0; c < chunks; c++) {
+			for (ObjectWriter w : writers) {
+				if (chunkoffset[c] < 0) w.writeRun(address, chunklength[c], chunkpattern[c]);
+				else w.writeData(address, arena, chunkoffset[c], chunklength[c]);
+			}
+			address += chunklength[c];
+		}
+	}
+	
+	/* Materializes the whole segment, runs included */
+	public byte[] toByteArray() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+		for (int c = 0; c < chunks; c++) {
+			if (chunkoffset[c] >= 0) out.write(arena, chunkoffset[c], chunklength[c]);
+			else out.write(runBytes(chunklength[c], chunkpattern[c]), 0, chunklength[c]);
+		}
+		return out.toByteArray();
+	}
+	
+	/* A block of length bytes repeating pattern, for writers to stream runs */
+	public static byte[] runBytes(int length, int pattern) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = (byte) (pattern >>> (8 * (Opcodes.bytesinst - 1 - i%Opcodes.bytesinst)));
+		return bytes;
+	}
+	
+	/* Marks the last length bytes written to the arena as part of the segment */
+	private void literal(int length) {
+		if (chunks > 0 && chunkoffset[chunks-1] >= 0 
+				&& chunkoffset[chunks-1] + chunklength[chunks-1] == arenalength) {
+			chunklength[chunks-1] += length;
+		} else {
+			ensureChunks();
+			chunkoffset[chunks] = arenalength;
+			chunklength[chunks] = length;
+			chunkpattern[chunks] = 0;
+			chunks++;
+		}
+		arenalength += length;
+		size += length;
+	}
+	
+	private void ensureArena(int length) {
+		if (arenalength + length > arena.length)
+			arena = Arrays.copyOf(arena, Math.max(2*arena.length, arenalength + length));
+	}
+	
+	private void ensureChunks() {
+		if (chunks == chunkoffset.length) {
+			chunkoffset = Arrays.copyOf(chunkoffset, 2*chunks);
+			chunklength = Arrays.copyOf(chunklength, 2*chunks);
+			chunkpattern = Arrays.copyOf(chunkpattern, 2*chunks);
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 
+ * @author raul
+ *
+ * Turns an image written by AssemblerParser.dumpObjFile back into assembly.
+ * The image is memory-mapped, everything below the text base (DATASEGSIZE
+ * unless given) is skipped and every instruction word is decoded through
+ * a 256-entry table indexed by its opcode, which gives the mnemonic and 
+ * the field layout (Rtype, IJtype, MBIRtype or Jtype) to decode it with.
+ * 
+ * Large images can be decoded in parallel: the text segment is split into
+ * chunks that are disassembled concurrently and then written in order.
+ */
+public class Disassembler {
+	public enum Format { NONE, R, IJ, MBIR, MB, J }
+	
+	private static final String[] mnemonics = new String[256];
+	private static final Format[] formats = new Format[256];
+	private static final int chunkwords = 1 << 16;
+	
+	static {
+		register(Opcodes.nop, "nop", Format.NONE);
+		register(Opcodes.halt, "halt", Format.NONE);
+		register(Opcodes.addd, "addd", Format.R);
+		register(Opcodes.subd, "subd", Format.R);
+		register(Opcodes.movd, "movd", Format.MB);
+		register(Opcodes.movi, "movi", Format.IJ);
+		register(Opcodes.movhi, "movhi", Format.IJ);
+		register(Opcodes.ld, "ld", Format.MBIR);
+		register(Opcodes.sd, "sd", Format.MBIR);
+		register(Opcodes.jmp, "jmp", Format.J);
+		register(Opcodes.beq, "beq", Format.MBIR);
+	}
+	
+	private Integer textbase;
+	private Integer threads;
+	
+	public Disassembler(Integer textbase, Integer threads) {
+		this.textbase = textbase;
+		this.threads = threads;
+	}
+	
+	public Disassembler() {
+		this(AssemblerParser.DATASEGSIZE, 1);
+	}
+	
+	private static void register(String opcode, String mnemonic, Format format) {
+		int op = Integer.parseInt(opcode, 2);
+		mnemonics[op] = mnemonic;
+		formats[op] = format;
+	}
+	
+	public static String getMnemonic(int word) {
+		return mnemonics[word >>> 24];
+	}
+	
+	public static Format getFormat(int word) {
+		return formats[word >>> 24];
+	}
+	
+	public static int getRd(int word) {
+		return (word >>> 19) & 0x1F;
+	}
+	
+	public static int getRa(int word) {
+		return (word >>> 14) & 0x1F;
+	}
+	
+	public static int getRb(int word) {
+		return (word >>> 9) & 0x1F;
+	}
+	
+	/* Sign-extended offset/immediate field of the word, for its format */
+	public static int getOffset(int word) {
+		Format format = formats[word >>> 24];
+		if (format == null) return 0;
+		switch (format) {
+			case IJ:	return (word << 13) >> 13;
+			case MBIR:	return (word << 18) >> 18;
+			case J:		return (word << 8) >> 8;
+			default:	return 0;
+		}
+	}
+	
+	/* Appends the assembly for one instruction word located at address */
+	public static void decode(int word, int address, StringBuilder out) {
+		int op = word >>> 24;
+		Format format = formats[op];
+		if (format == null) {
+			out.append(".word 0x").append(Integer.toHexString(word));
+			return;
+		}
+		out.append(mnemonics[op]);
+		switch (format) {
+			case NONE:
+				break;
+			case R:
+				out.append(" r").append(getRd(word)).append(", r").append(getRa(word))
+					.append(", r").append(getRb(word));
+				break;
+			case MB:
+				out.append(" r").append(getRd(word)).append(", r").append(getRa(word));
+				break;
+			case IJ:
+				out.append(" r").append(getRd(word)).append(", #").append(getOffset(word));
+				break;
+			case MBIR:
+				out.append(" r").append(getRd(word)).append(", r").append(getRa(word))
+					.append(", #").append(getOffset(word));
+				if (op == 0x80) target(address, getOffset(word), out);
+				break;
+			case J:
+				out.append(" #").append(getOffset(word));
+				target(address, getOffset(word), out);
+				break;
+		}
+	}
+	
+	private static void target(int address, int offset, StringBuilder out) {
+		out.append("\t! -> 0x").append(hex(address + (offset << 2)));
+	}
+	
+	private static String hex(int value) {
+		String h = Integer.toHexString(value);
+		return "00000000".substring(h.length()).concat(h);
+	}
+	
+	public void disassemble(String binpath, String outpath) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(binpath, "r");
+		BufferedWriter writer = null;
+		try {
+			final IntBuffer words = mapText(file);
+			int count = words.remaining();
+			writer = new BufferedWriter(new FileWriter(outpath), 1 << 16);
+			writer.write(".text");
+			writer.newLine();
+			if (threads <= 1 || count <= chunkwords) {
+				writer.append(disassemble(words, 0, count));
+			} else {
+				ExecutorService pool = Executors.newFixedThreadPool(threads);
+				try {
+					List<Future<StringBuilder>> chunks = new ArrayList<Future<StringBuilder>>();
+					for (int start = 0; start < count; start += chunkwords) {
+						final int from = start;
+						final int to = Math.min(count, start + chunkwords);
+						chunks.add(pool.submit(new Callable<StringBuilder>() {
+							@Override
+							public StringBuilder call() {
+								return disassemble(words.duplicate(), from, to);
+							}
+						}));
+					}
+					for (Future<StringBuilder> chunk : chunks)
+						writer.append(chunk.get());
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				} catch (ExecutionException e) {
+					throw new IOException(e.getCause());
+				} finally {
+					pool.shutdown();
+				}
+			}
+		} finally {
+			if (writer != null) writer.close();
+			file.close();
+		}
+	}
+	
+	/* The instructions of the text segment of an image, for analysis. A
+	 * branch target, or an instruction after a word that is not one, 
+	 * starts a basic block and gets a label named after its address.
+	 */
+	public List<Instruction> instructions(String binpath) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(binpath, "r");
+		try {
+			IntBuffer words = mapText(file);
+			List<Instruction> instructions = new ArrayList<Instruction>(words.remaining());
+			HashSet<Integer> leaders = new HashSet<Integer>();
+			for (int i = 0; i < words.remaining(); i++) {
+				int address = textbase + (i << 2);
+				Instruction inst = toInstruction(words.get(i), address);
+				if (inst == null) {
+					leaders.add(address + Opcodes.bytesinst);
+					continue;
+				}
+				if (inst instanceof Jmp || inst instanceof Beq) leaders.add(address + (inst.getOffset() << 2));
+				instructions.add(inst);
+			}
+			for (Instruction inst : instructions)
+				if (leaders.contains(inst.getInstAddress())) inst.setCodeLabel("L" + hex(inst.getInstAddress()));
+			return instructions;
+		} finally {
+			file.close();
+		}
+	}
+	
+	/* The instruction a word encodes, with its disassembly as source text,
+	 * or null if the word is not an instruction.
+	 */
+	public static Instruction toInstruction(int word, int address) {
+		String mnemonic = getMnemonic(word);
+		if (mnemonic == null) return null;
+		Instruction inst = Instruction.NewInstruction(mnemonic, address);
+		inst.setOperands(word);
+		StringBuilder text = new StringBuilder(24);
+		decode(word, address, text);
+		inst.setSourceInfo(null, text.toString(), null);
+		return inst;
+	}
+	
+	private IntBuffer mapText(RandomAccessFile file) throws IOException {
+		FileChannel channel = file.getChannel();
+		long size = channel.size();
+		if (size < textbase) throw new IOException("Image is smaller than the data segment");
+		MappedByteBuffer image = channel.map(FileChannel.MapMode.READ_ONLY, textbase, size - textbase);
+		image.order(ByteOrder.BIG_ENDIAN);
+		return image.asIntBuffer();
+	}
+	
+	private StringBuilder disassemble(IntBuffer words, int from, int to) {
+		StringBuilder out = new StringBuilder((to - from) * 40);
+		for (int i = from; i < to; i++) {
+			int address = textbase + (i << 2);
+			int word = words.get(i);
+			out.append(hex(address)).append(":  ").append(hex(word)).append("\t\t");
+			decode(word, address, out);
+			out.append('\n');
+		}
+		return out;
+	}
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 
+ * @author raul
+ *
+ * Encoded words of the instruction lines assembled so far, so that a line
+ * repeated many times (generated code) costs one lookup instead of being
+ * matched against the section, opcode and operand regular expressions 
+ * again. Lines are keyed by their text without the ! comment, with runs of
+ * spaces made one and no spaces around commas, which the operand patterns
+ * ignore. Only lines that neither define nor reference a label are kept, 
+ * as their word does not depend on where they are or on the file. The 
+ * instruction is rebuilt from the word, its opcode giving the mnemonic.
+ * The least recently used lines are dropped beyond capacity.
+ */
+public class EncodingCache {
+	private final LinkedHashMap<String,Integer> words;
+	
+	public EncodingCache(final Integer capacity) {
+		this.words = new LinkedHashMap<String,Integer>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,Integer> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+	
+	/* A new instruction at address for a line seen before, null if not cached */
+	public Instruction get(String line, Integer address) {
+		if (line.indexOf(':') >= 0) return null;
+		Integer word = words.get(key(line));
+		if (word == null) return null;
+		Instruction inst = Instruction.NewInstruction(Disassembler.getMnemonic(word), address);
+		inst.setOperands(word);
+		return inst;
+	}
+	
+	/* Remembers the encoding of an instruction line just parsed */
+	public void put(String line, Instruction inst) {
+		if (inst.getLabel().isEmpty() && line.indexOf(':') < 0) words.put(key(line), inst.getBinaryRepresentation());
+	}
+	
+	private static String key(String line) {
+		int end = line.indexOf('!');
+		if (end < 0) end = line.length();
+		StringBuilder key = new StringBuilder(end);
+		for (int i = 0; i < end; i++) {
+			char c = line.charAt(i);
+			int last = key.length() - 1;
+			if (c == ' ') {
+				if (last >= 0 && key.charAt(last) != ' ' && key.charAt(last) != ',') key.append(c);
+			} else {
+				if (c == ',' && last >= 0 && key.charAt(last) == ' ') key.setLength(last);
+				key.append(c);
+			}
+		}
+		if (key.length() > 0 && key.charAt(key.length()-1) == ' ') key.setLength(key.length()-1);
+		return key.toString();
+	}
+}
@@ -24,6 +24,11 @@ public class Halt extends Instruction {
 		super(Opcodes.halt, address);
 		this.zerofillsize = Opcodes.bitsinst-Opcodes.bitsopcode;
 	}
+	@Override
+	public Boolean endsBasicBlock() {
+		return true;
+	}
+	
 	@Override
 	public Integer getBinaryRepresentation() {
 		return 0xFFFFFFFF;
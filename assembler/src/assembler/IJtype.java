@@ -39,26 +39,24 @@ import java.util.regex.Pattern;
  *  Move Immediate 	(MOVI)
  */
 public abstract class IJtype extends Instruction {
-	private static Pattern opsexp = null;
-	private static Pattern labelp = null;
-	private static Pattern offsetp = null;
+	private static final Pattern opsexp = Pattern.compile("([ ]*r([0-9]{1,})[ ]*,[ ]*((#|0x)(-?[0-9]{1,})|[A-Z][A-Z0-9_]*))",  Pattern.CASE_INSENSITIVE);
+	private static final Pattern labelp = Pattern.compile("([A-Z][A-Z0-9_]*)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern offsetp = Pattern.compile("((#|0x)(-?[0-9]{1,}))", Pattern.CASE_INSENSITIVE);
 	
 	public IJtype(String opcode, Integer address) {
 		super(opcode,address);
-		if (opsexp == null)
-			opsexp = Pattern.compile("([ ]*r([0-9]{1,})[ ]*,[ ]*((#|0x)(-?[0-9]{1,})|[A-Z]{1,}[0-9]?{1,}))", 
-					Pattern.CASE_INSENSITIVE);
-		if (labelp == null)
-			labelp = Pattern.compile("([A-Z]{1,}[0-9]?{1,})", Pattern.CASE_INSENSITIVE);
-		if (offsetp == null)
-			offsetp = Pattern.compile("((#|0x)(-?[0-9]{1,}))", Pattern.CASE_INSENSITIVE);
 	}
+	@Override
+	public Integer getDestRegister() {
+		return this.rd;
+	}
+	
 	@Override
 	public Integer getBinaryRepresentation() {
 		Integer instruction = 0;
 		instruction = (0x000000FF & this.opcode) << Opcodes.bitsinst-Opcodes.bitsopcode;
 		instruction = instruction | ((0x0000001F & this.rd) << (Opcodes.bitsinst-Opcodes.bitsopcode-Opcodes.bitsreg));
-		instruction = instruction | (0x000FFFFF & this.offset);
+		instruction = instruction | (0x0007FFFF & this.offset);
 		return instruction;
 	}
 
@@ -88,7 +86,10 @@ public abstract class IJtype extends Instruction {
 					this.offset = AssemblerParser.getAddress(offstring);
 				} else if (AssemblerParser.isCodeLabel(offstring) && this.acceptsCodeLabels()) {
 					this.offset = (AssemblerParser.getAddress(offstring) - this.instaddress) >> 2;
+				} else if (AssemblerParser.isExternalLabel(offstring)) {
+					this.offset = 0;
 				} else throw new BadInstructionException("Invalid label");
+				this.label = offstring;
 				
 			} else throw new BadInstructionException("Invalid offset/label field");
 		}
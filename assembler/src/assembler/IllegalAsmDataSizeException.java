@@ -23,6 +23,10 @@ public class IllegalAsmDataSizeException extends IllegalAsmException {
 	public IllegalAsmDataSizeException() {
 		super("The data segment has a size bigger than 512 bytes. Please reduce it.");
 	}
+	
+	public IllegalAsmDataSizeException(Integer size) {
+		super("The data segment has a size bigger than " + size + " bytes. Please reduce it.");
+	}
 
 	/**
 	 * 
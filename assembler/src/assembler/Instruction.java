@@ -18,8 +18,6 @@
  *******************************************************************************/
 package assembler;
 
-import java.util.regex.Pattern;
-
 public abstract class Instruction {
 	protected Integer instaddress;
 	protected Integer opcode;
@@ -28,10 +26,12 @@ public abstract class Instruction {
 	protected Integer offset,address;
 	protected Integer zerofillsize;
 	protected String label;
-	protected Pattern whitespace;
+	protected String codelabel;
+	protected Integer sourceline;
+	protected String source;
+	protected String retargeted;
 	
 	public Instruction() {
-		this.whitespace = Pattern.compile("(\\s+)",Pattern.CASE_INSENSITIVE);
 		this.opcode = Integer.parseInt(Opcodes.nop,2);
 		this.setZeroAll();
 		this.instaddress = 0;
@@ -79,6 +79,90 @@ public abstract class Instruction {
 		return this.instaddress;
 	}
 	
+	/* Sets the operand fields the format of word has from it, which is the
+	 * reverse of getBinaryRepresentation for operands that are not labels.
+	 */
+	public Boolean setOperands(Integer word) {
+		switch (Disassembler.getFormat(word)) {
+			case R:
+				this.rd = Disassembler.getRd(word);
+				this.ra = Disassembler.getRa(word);
+				this.rb = Disassembler.getRb(word);
+				break;
+			case MB:
+				this.rd = Disassembler.getRd(word);
+				this.ra = Disassembler.getRa(word);
+				break;
+			case MBIR:
+				this.rd = Disassembler.getRd(word);
+				this.ra = Disassembler.getRa(word);
+				this.offset = Disassembler.getOffset(word);
+				break;
+			case IJ:
+				this.rd = Disassembler.getRd(word);
+				this.offset = Disassembler.getOffset(word);
+				break;
+			case J:
+				this.offset = Disassembler.getOffset(word);
+				break;
+			default:
+				break;
+		}
+		return true;
+	}
+	
+	/* Source position and label of the line this instruction was assembled
+	 * from. Used to map program counters back to the source (-map, -listing).
+	 */
+	public Boolean setSourceInfo(Integer line, String text, String deflabel) {
+		this.sourceline = line;
+		this.source = text;
+		this.codelabel = deflabel;
+		return true;
+	}
+	
+	public Integer getSourceLine() {
+		return this.sourceline;
+	}
+	
+	public String getSource() {
+		return this.source;
+	}
+	
+	/* Text the operands are resolved from: the source, unless the branch
+	 * was given another target (see setTarget)
+	 */
+	public String getText() {
+		return this.retargeted != null ? this.retargeted : this.source;
+	}
+	
+	/* Makes text, a branch to another label, the text the operands are 
+	 * resolved from, leaving the source as written
+	 */
+	public Boolean setTarget(String text) {
+		this.retargeted = text;
+		return true;
+	}
+	
+	/* The source, followed by the label actually branched to if it changed */
+	public String getAnnotatedSource() {
+		return this.retargeted != null ? this.source + " ! -> " + this.label : this.source;
+	}
+	
+	/* Label referenced by the operands, empty if there is none */
+	public String getLabel() {
+		return this.label;
+	}
+	
+	public String getCodeLabel() {
+		return this.codelabel;
+	}
+	
+	public Boolean setCodeLabel(String deflabel) {
+		this.codelabel = deflabel;
+		return true;
+	}
+	
 	public Integer getOpcode() {
 		return this.opcode;
 	}
@@ -178,6 +262,17 @@ public abstract class Instruction {
 		return null;
 	}
 	
+	/* Encoding with the offset field left as zero, for instructions whose
+	 * label is resolved later by the Linker.
+	 */
+	public Integer getUnresolvedBinaryRepresentation() {
+		Integer resolved = this.offset;
+		this.offset = 0;
+		Integer binary = this.getBinaryRepresentation();
+		this.offset = resolved;
+		return binary;
+	}
+	
 	public abstract Integer getBinaryRepresentation();
 	public abstract Boolean parseInstruction(String operands) throws BadInstructionException;
 	public Boolean acceptsDataLabels() {
@@ -186,4 +281,28 @@ public abstract class Instruction {
 	public Boolean acceptsCodeLabels() {
 		return true;
 	}
+	
+	/* Register written by the instruction, null if none. Used with the
+	 * methods below to find the dependencies between instructions.
+	 */
+	public Integer getDestRegister() {
+		return null;
+	}
+	public Integer[] getSourceRegisters() {
+		return new Integer[0];
+	}
+	public Boolean readsMemory() {
+		return false;
+	}
+	public Boolean writesMemory() {
+		return false;
+	}
+	/* False for a branch whose target is too far for its offset field */
+	public Boolean isOffsetInRange() {
+		return true;
+	}
+	/* True if execution may not continue with the next instruction */
+	public Boolean endsBasicBlock() {
+		return false;
+	}
 }
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * 
+ * @author raul
+ *
+ * Intel HEX output. Bytes are gathered into data records of up to 16
+ * bytes; an extended linear address record is written whenever the upper
+ * 16 bits of the address change, and the file ends with an EOF record.
+ */
+public class IntelHexWriter implements ObjectWriter {
+	private static final int recordsize = 16;
+	private BufferedWriter out;
+	private byte[] record = new byte[recordsize];
+	private int recordlength = 0;
+	private int recordaddress = 0;
+	private int upperaddress = 0;
+	
+	public IntelHexWriter(String path) throws IOException {
+		this.out = new BufferedWriter(new FileWriter(path), 1 << 16);
+	}
+
+	@Override
+	public void writeData(Integer address, byte[] bytes, Integer offset, Integer length) throws IOException {
+		for (int i = 0; i < length; i++) put(address + i, bytes[offset + i]);
+	}
+
+	@Override
+	public void writeFill(Integer address, Integer length, byte value) throws IOException {
+		for (int i = 0; i < length; i++) put(address + i, value);
+	}
+
+	@Override
+	public void writeRun(Integer address, Integer length, Integer pattern) throws IOException {
+		for (int i = 0; i < length; i++)
+			put(address + i, (byte) (pattern >>> (8 * (Opcodes.bytesinst - 1 - i%Opcodes.bytesinst))));
+	}
+
+	@Override
+	public void writeInstruction(Integer address, Integer word) throws IOException {
+		writeData(address, AssemblerParser.intToByteArray(word), 0, Opcodes.bytesinst);
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		out.write(":00000001FF");
+		out.newLine();
+		out.close();
+	}
+	
+	private void put(int address, byte value) throws IOException {
+		if (recordlength == recordsize || (recordlength > 0 && address != recordaddress + recordlength)
+				|| (recordlength > 0 && (address >>> 16) != upperaddress))
+			flush();
+		if (recordlength == 0) {
+			recordaddress = address;
+			if ((address >>> 16) != upperaddress) {
+				upperaddress = address >>> 16;
+				line(0, 0x04, new byte[] {(byte) (upperaddress >> 8), (byte) upperaddress}, 2);
+			}
+		}
+		record[recordlength++] = value;
+	}
+	
+	private void flush() throws IOException {
+		if (recordlength == 0) return;
+		line(recordaddress & 0xFFFF, 0x00, record, recordlength);
+		recordlength = 0;
+	}
+	
+	private void line(int address, int type, byte[] bytes, int length) throws IOException {
+		int checksum = length + (address >> 8) + (address & 0xFF) + type;
+		StringBuilder sb = new StringBuilder(11 + 2*length);
+		sb.append(':');
+		hex(sb, length);
+		hex(sb, address >> 8);
+		hex(sb, address);
+		hex(sb, type);
+		for (int i = 0; i < length; i++) {
+			hex(sb, bytes[i]);
+			checksum += bytes[i] & 0xFF;
+		}
+		hex(sb, -checksum);
+		out.write(sb.toString());
+		out.newLine();
+	}
+	
+	private static void hex(StringBuilder sb, int value) {
+		sb.append(Character.toUpperCase(Character.forDigit((value >> 4) & 0xF, 16)));
+		sb.append(Character.toUpperCase(Character.forDigit(value & 0xF, 16)));
+	}
+}
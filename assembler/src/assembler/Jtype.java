@@ -39,19 +39,23 @@ import java.util.regex.Pattern;
  * Return			(RET)
  */
 public class Jtype extends Instruction {
-	private static Pattern opsexp = null;
-	private static Pattern labelp = null;
-	private static Pattern offsetp = null;
+	private static final Pattern opsexp = Pattern.compile("[A-Z][ ]{1,}([ ]*((#|0x)(-?[0-9]{1,})|[A-Z][A-Z0-9_]*))", Pattern.CASE_INSENSITIVE); //Jump
+	private static final Pattern labelp = Pattern.compile("([A-Z][A-Z0-9_]*)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern offsetp = Pattern.compile("((#|0x)(-?[0-9]{1,}))", Pattern.CASE_INSENSITIVE);
 	
 	public Jtype(String opcode, Integer address) {
 		super(opcode,address);
-		if (opsexp == null)
-			opsexp = Pattern.compile("[A-Z][ ]{1,}([ ]*((#|0x)(-?[0-9]{1,})|[A-Z]{1,}[0-9]?{1,}))", Pattern.CASE_INSENSITIVE); //Jump
-		if (labelp == null)
-			labelp = Pattern.compile("([A-Z]{1,}[0-9]?{1,})", Pattern.CASE_INSENSITIVE);
-		if (offsetp == null)
-			offsetp = Pattern.compile("((#|0x)(-?[0-9]{1,}))", Pattern.CASE_INSENSITIVE);
 	}
+	@Override
+	public Boolean isOffsetInRange() {
+		return this.offset >= Opcodes.limitnegjmpaddr && this.offset <= Opcodes.limitposjmpaddr;
+	}
+	
+	@Override
+	public Boolean endsBasicBlock() {
+		return true;
+	}
+	
 	@Override
 	public Integer getBinaryRepresentation() {
 		Integer instruction = 0; //We start with a NOP.
@@ -84,11 +88,14 @@ public class Jtype extends Instruction {
 			} else if (labelmatcher.find()) {
 				if (AssemblerParser.isCodeLabel(offstring) && this.acceptsCodeLabels()) {
 					this.offset = (AssemblerParser.getAddress(offstring) - this.instaddress) >> 2;
+				} else if (AssemblerParser.isExternalLabel(offstring)) {
+					this.offset = 0;
 				} else throw new BadInstructionException("Invalid label");
+				this.label = offstring;
 				
 			} else throw new BadInstructionException("Invalid offset/label field");
 		}
-		if (this.offset < Opcodes.limitnegoffset || this.offset > Opcodes.limitposoffset) {
+		if (!this.isOffsetInRange()) {
 			throw new BadInstructionException("An instruction operand is out of range");
 		}
 		return true;
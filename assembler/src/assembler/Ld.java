@@ -28,5 +28,10 @@ public class Ld extends MBIRtype {
 	public Boolean acceptsCodeLabels() {
 		return false;
 	}
+	
+	@Override
+	public Boolean readsMemory() {
+		return true;
+	}
 
 }
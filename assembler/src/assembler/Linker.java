@@ -0,0 +1,180 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 
+ * @author raul
+ *
+ * Links relocatable objects written by "asm -c" into one image with the
+ * same layout as AssemblerParser.dumpObjFile: the data segments of all
+ * modules, in command line order, from address 0 up to DATASEGSIZE, and 
+ * their text segments from DATASEGSIZE on.
+ * 
+ * Objects are read, their exported symbols registered in a concurrent
+ * global symbol table and their relocations applied in parallel, one
+ * task per module. A reference is resolved against the labels of its own
+ * module first and then against the .global labels of all modules.
+ */
+public class Linker {
+	private Integer threads;
+	
+	private static class Module {
+		String path;
+		ObjectFile object;
+		Integer database;
+		Integer textbase;
+		int[] text;
+		HashMap<String,ObjectFile.Symbol> locals = new HashMap<String,ObjectFile.Symbol>();
+	}
+	
+	public Linker(Integer threads) {
+		this.threads = threads;
+	}
+	
+	public void link(List<String> paths, String output) throws IOException, IllegalAsmException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Module> modules = new ArrayList<Module>();
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (String path : paths) {
+				final Module m = new Module();
+				m.path = path;
+				modules.add(m);
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						m.object = ObjectFile.read(m.path);
+						return null;
+					}
+				});
+			}
+			run(pool, tasks);
+			
+			Integer database = 0;
+			Integer textbase = AssemblerParser.DATASEGSIZE;
+			for (Module m : modules) {
+				m.database = database;
+				m.textbase = textbase;
+				database += m.object.getData().length;
+				textbase += m.object.getText().length * Opcodes.bytesinst;
+			}
+			if (database > AssemblerParser.DATASEGSIZE)
+				throw new IllegalAsmException("Linked data segments take " + database + " bytes, only " 
+						+ AssemblerParser.DATASEGSIZE + " available");
+			
+			final ConcurrentHashMap<String,ObjectFile.Symbol> globals = new ConcurrentHashMap<String,ObjectFile.Symbol>();
+			tasks.clear();
+			for (final Module m : modules) {
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() throws IllegalAsmException {
+						for (ObjectFile.Symbol s : m.object.getSymbols()) {
+							Integer base = s.section == 'D' ? m.database : m.textbase;
+							ObjectFile.Symbol resolved = new ObjectFile.Symbol(s.name, s.section, s.global, base + s.offset);
+							m.locals.put(s.name, resolved);
+							if (s.global && globals.putIfAbsent(s.name, resolved) != null)
+								throw new IllegalAsmException("Global label " + s.name + " defined more than once");
+						}
+						return null;
+					}
+				});
+			}
+			run(pool, tasks);
+			
+			tasks.clear();
+			for (final Module m : modules) {
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() throws IllegalAsmException {
+						m.text = m.object.getText().clone();
+						for (ObjectFile.Relocation r : m.object.getRelocations()) {
+							ObjectFile.Symbol s = m.locals.get(r.symbol);
+							if (s == null) s = globals.get(r.symbol);
+							if (s == null) throw new IllegalAsmException("Undefined label " + r.symbol + " in " + m.path);
+							m.text[r.index] = relocate(m.text[r.index], m.textbase + r.index * Opcodes.bytesinst, s);
+						}
+						return null;
+					}
+				});
+			}
+			run(pool, tasks);
+			
+			OutputStream writer = new BufferedOutputStream(new FileOutputStream(output));
+			try {
+				for (Module m : modules) writer.write(m.object.getData());
+				for (int i = database; i < AssemblerParser.DATASEGSIZE; i++) writer.write('0');
+				for (Module m : modules)
+					for (int word : m.text) writer.write(AssemblerParser.intToByteArray(word));
+			} finally {
+				writer.close();
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/* Fills in the operand field of word with the address of symbol s, the
+	 * same way the instruction would have been assembled had the label 
+	 * been defined in its own file.
+	 */
+	private static int relocate(int word, int address, ObjectFile.Symbol s) throws IllegalAsmException {
+		Instruction inst = Instruction.NewInstruction(Disassembler.getMnemonic(word));
+		Integer value;
+		if (s.section == 'D' && inst.acceptsDataLabels()) value = s.offset;
+		else if (s.section == 'T' && inst.acceptsCodeLabels()) value = (s.offset - address) >> 2;
+		else throw new IllegalAsmException("Invalid label " + s.name + " at address " + address);
+		Boolean jump = Disassembler.getFormat(word) == Disassembler.Format.J;
+		if (value < (jump ? Opcodes.limitnegjmpaddr : Opcodes.limitnegoffset) 
+				|| value > (jump ? Opcodes.limitposjmpaddr : Opcodes.limitposoffset))
+			throw new IllegalAsmException("Label " + s.name + " out of range at address " + address);
+		switch (Disassembler.getFormat(word)) {
+			case IJ:	return word | (value & 0x0007FFFF);
+			case MBIR:	return word | (value & 0x00003FFF);
+			case J:		return word | (value & 0x00FFFFFF);
+			default:	throw new IllegalAsmException("Instruction at address " + address + " takes no label");
+		}
+	}
+	
+	private static void run(ExecutorService pool, List<Callable<Void>> tasks) throws IOException, IllegalAsmException {
+		try {
+			for (Future<Void> f : pool.invokeAll(tasks)) f.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IllegalAsmException) throw (IllegalAsmException) e.getCause();
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+}
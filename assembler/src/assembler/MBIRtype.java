@@ -39,22 +39,31 @@ import java.util.regex.Pattern;
  * Move						(MOVD)
  */
 public abstract class MBIRtype extends Instruction {
-	protected static Pattern opsexp = null;
-	protected static Pattern labelp = null;
-	protected static Pattern offsetp = null;
+	protected static final Pattern opsexp = Pattern.compile("([ ]*r([0-9]{1,})[ ]*,[ ]*r([0-9]{1,})[ ]*(,[ ]*(#-?[0-9]{1,}|0x-?[0-9]{1,}|.*))?)",Pattern.CASE_INSENSITIVE);
+	protected static final Pattern labelp = Pattern.compile("([A-Z][A-Z0-9_]*)", Pattern.CASE_INSENSITIVE);
+	protected static final Pattern offsetp = Pattern.compile("(#|0x)(-?[0-9]{1,})", Pattern.CASE_INSENSITIVE);
 	protected Boolean needsoffset = true;
 
 	public MBIRtype(String op, Integer address) {
 		super(op,address);
-		if (opsexp == null) 
-			opsexp = Pattern.compile("([ ]*r([0-9]{1,})[ ]*,[ ]*r([0-9]{1,})[ ]*(,[ ]*(#-?[0-9]{1,}|0x-?[0-9]{1,}|.*))?)",Pattern.CASE_INSENSITIVE);
-		if (labelp == null)
-			labelp = Pattern.compile("([A-Z]{1,}[0-9]?{1,})", Pattern.CASE_INSENSITIVE);
-		if (offsetp == null)
-			offsetp = Pattern.compile("(#|0x)(-?[0-9]{1,})", Pattern.CASE_INSENSITIVE);
 	}
 	
 	
+	@Override
+	public Integer getDestRegister() {
+		return this.rd;
+	}
+	
+	@Override
+	public Integer[] getSourceRegisters() {
+		return new Integer[] {this.ra};
+	}
+	
+	@Override
+	public Boolean isOffsetInRange() {
+		return this.offset >= Opcodes.limitnegoffset && this.offset <= Opcodes.limitposoffset;
+	}
+	
 	@Override
 	public Integer getBinaryRepresentation() {
 		Integer instruction = 0; //We start with a NOP.
@@ -70,6 +79,7 @@ public abstract class MBIRtype extends Instruction {
 			throws BadInstructionException {
 		Matcher opmatcher = MBIRtype.opsexp.matcher(line);
 		String offstring = null;
+		Boolean pcrelative = false;
 		opmatcher.reset();
 		if (opmatcher.find()) {
 			this.rd = Integer.parseInt(opmatcher.group(2));
@@ -95,11 +105,16 @@ public abstract class MBIRtype extends Instruction {
 					this.offset = AssemblerParser.getAddress(offstring);
 				} else if (AssemblerParser.isCodeLabel(offstring) && this.acceptsCodeLabels()) {
 					this.offset = (AssemblerParser.getAddress(offstring) - this.instaddress) >> 2;
+					pcrelative = true;
+				} else if (AssemblerParser.isExternalLabel(offstring)) {
+					this.offset = 0;
 				} else throw new BadInstructionException("Invalid label");
+				this.label = offstring;
 			} else throw new BadInstructionException("Invalid offset/label field");
 		}
+		/* Branches to labels too far away are left for AssemblerParser.relax */
 		if (this.ra < 0 || this.ra > Opcodes.numregs-1 || this.rd < 0 || this.rd > Opcodes.numregs-1 
-				|| this.offset < Opcodes.limitnegoffset || this.offset > Opcodes.limitposoffset) {
+				|| (!pcrelative && !this.isOffsetInRange())) {
 			throw new BadInstructionException("An instruction operand is out of range");
 		}
 		return true;
@@ -9,4 +9,10 @@ public class Movhi extends IJtype {
 	public Boolean acceptsCodeLabels() {
 		return false;
 	}
+	
+	/* Only the upper bits are replaced */
+	@Override
+	public Integer[] getSourceRegisters() {
+		return new Integer[] {this.rd};
+	}
 }
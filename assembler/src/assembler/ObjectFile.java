@@ -0,0 +1,160 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 
+ * @author raul
+ *
+ * Relocatable object produced by "asm -c" and consumed by the Linker.
+ * It holds the data segment bytes and the text segment words of one module,
+ * assembled as if both segments started at their usual bases (0 and 
+ * DATASEGSIZE), plus:
+ * 
+ * - a symbol table with every label, its section (D or T), its offset from
+ *   the start of that section and whether it was exported with .global;
+ * - a relocation table with one entry per instruction referencing a label.
+ *   The operand field of those instructions is left as zero and filled in
+ *   by the Linker once addresses are final.
+ * 
+ * File layout (big-endian, strings in modified UTF-8):
+ * "VOBJ" version | datasize data... | textsize words... |
+ * nsymbols (name section global offset)... | nrelocs (index symbol)...
+ */
+public class ObjectFile {
+	public static final Integer magic = 0x564F424A;
+	public static final Integer version = 1;
+	
+	public static class Symbol {
+		public final String name;
+		public final char section;
+		public final Boolean global;
+		public final Integer offset;
+		
+		public Symbol(String name, char section, Boolean global, Integer offset) {
+			this.name = name;
+			this.section = section;
+			this.global = global;
+			this.offset = offset;
+		}
+	}
+	
+	public static class Relocation {
+		public final Integer index;
+		public final String symbol;
+		
+		public Relocation(Integer index, String symbol) {
+			this.index = index;
+			this.symbol = symbol;
+		}
+	}
+	
+	private byte[] data;
+	private int[] text;
+	private List<Symbol> symbols;
+	private List<Relocation> relocations;
+	
+	public ObjectFile(byte[] data, int[] text, List<Symbol> symbols, List<Relocation> relocations) {
+		this.data = data;
+		this.text = text;
+		this.symbols = symbols;
+		this.relocations = relocations;
+	}
+	
+	public byte[] getData() {
+		return this.data;
+	}
+	
+	public int[] getText() {
+		return this.text;
+	}
+	
+	public List<Symbol> getSymbols() {
+		return this.symbols;
+	}
+	
+	public List<Relocation> getRelocations() {
+		return this.relocations;
+	}
+	
+	public void write(String path) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+		try {
+			out.writeInt(magic);
+			out.writeInt(version);
+			out.writeInt(data.length);
+			out.write(data);
+			out.writeInt(text.length);
+			for (int word : text) out.writeInt(word);
+			out.writeInt(symbols.size());
+			for (Symbol s : symbols) {
+				out.writeUTF(s.name);
+				out.writeByte(s.section);
+				out.writeBoolean(s.global);
+				out.writeInt(s.offset);
+			}
+			out.writeInt(relocations.size());
+			for (Relocation r : relocations) {
+				out.writeInt(r.index);
+				out.writeUTF(r.symbol);
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	public static ObjectFile read(String path) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+		try {
+			if (in.readInt() != magic) throw new IOException(path + " is not an object file");
+			if (in.readInt() != version) throw new IOException(path + " has an unsupported object version");
+			byte[] data = new byte[in.readInt()];
+			in.readFully(data);
+			int[] text = new int[in.readInt()];
+			for (int i = 0; i < text.length; i++) text[i] = in.readInt();
+			int count = in.readInt();
+			List<Symbol> symbols = new ArrayList<Symbol>(count);
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				char section = (char) in.readByte();
+				Boolean global = in.readBoolean();
+				symbols.add(new Symbol(name, section, global, in.readInt()));
+			}
+			count = in.readInt();
+			List<Relocation> relocations = new ArrayList<Relocation>(count);
+			for (int i = 0; i < count; i++) {
+				Integer index = in.readInt();
+				relocations.add(new Relocation(index, in.readUTF()));
+			}
+			return new ObjectFile(data, text, symbols, relocations);
+		} finally {
+			in.close();
+		}
+	}
+}
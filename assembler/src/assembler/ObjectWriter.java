@@ -0,0 +1,39 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.io.IOException;
+
+/**
+ * 
+ * @author raul
+ *
+ * Output format for an assembled image. AssemblerParser.dumpObjFile emits
+ * the image once, in address order, to any number of writers: the data
+ * segment bytes and runs, the fill up to the text segment and then the encoded
+ * instruction words. Nothing is re-read or re-encoded per format.
+ */
+public interface ObjectWriter {
+	public void writeData(Integer address, byte[] bytes, Integer offset, Integer length) throws IOException;
+	public void writeFill(Integer address, Integer length, byte value) throws IOException;
+	/* length bytes repeating the big-endian word pattern (.space, .fill) */
+	public void writeRun(Integer address, Integer length, Integer pattern) throws IOException;
+	public void writeInstruction(Integer address, Integer word) throws IOException;
+	public void close() throws IOException;
+}
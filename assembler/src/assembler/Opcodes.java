@@ -34,19 +34,21 @@ public final class Opcodes {
 	public static final Integer bytesinst	= bitsinst/8;
 	public static final Integer bitsopcode	= 8;
 	public static final Integer bitsreg		= 5;
-	public static final Integer numregs		= (int) Math.pow(2, Opcodes.bitsreg);
+	public static final Integer numregs		= 1 << Opcodes.bitsreg;
 	public static final Integer bitsaddress = 32;
 	public static final Integer bitsoffset 	= 14;
 	public static final Integer bitsimmmov  = 19;
 	public static final Integer bitsjmpaddr = 24;
-	public static final Integer limitposaddr	= (int) Math.pow(2,Opcodes.bitsaddress-1)-1;
+	public static final Integer limitposaddr	= (int) ((1L << (Opcodes.bitsaddress-1)) - 1);
 	public static final Integer limitnegaddr	= 0;
-	public static final Integer limitposoffset 	= (int) Math.pow(2, Opcodes.bitsoffset-1)-1;
-	public static final Integer limitnegoffset 	= (int) -(Math.pow(2, Opcodes.bitsoffset-1));
-	public static final Integer limitposimmov 	= (int) Math.pow(2, Opcodes.bitsimmmov-1)-1;
-	public static final Integer limitnegimmov 	= (int) -(Math.pow(2, Opcodes.bitsimmmov-1));
-	public static final Integer limitposjmpaddr = (int) Math.pow(2, Opcodes.bitsjmpaddr-1)-1;
-	public static final Integer limitnegjmpaddr = (int) -(Math.pow(2, Opcodes.bitsjmpaddr-1));
+	public static final Integer limitposoffset 	= (1 << (Opcodes.bitsoffset-1)) - 1;
+	public static final Integer limitnegoffset 	= -(1 << (Opcodes.bitsoffset-1));
+	public static final Integer limitposimmov 	= (1 << (Opcodes.bitsimmmov-1)) - 1;
+	public static final Integer limitnegimmov 	= -(1 << (Opcodes.bitsimmmov-1));
+	public static final Integer limitposjmpaddr = (1 << (Opcodes.bitsjmpaddr-1)) - 1;
+	public static final Integer limitnegjmpaddr = -(1 << (Opcodes.bitsjmpaddr-1));
+	/* l1d_line_size in core_defs.vhd */
+	public static final Integer l1dlinesize	= 128;
 	
 	
 	private Opcodes() {}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 
+ * @author raul
+ *
+ * Removes instructions that have no effect:
+ *  - nop
+ *  - movd rX, rX
+ *  - register writes to r0, which regfile.vhd discards
+ *  - a movi or movhi identical to the last one that wrote the register,
+ *    when the register has not been written since
+ *  - a register write that is overwritten, without being read, further
+ *    down the same basic block
+ * 
+ * Loads, stores, branches and halt are never removed, nor is the last 
+ * instruction of the program, so that a label on it keeps pointing inside
+ * the text. Values are tracked within basic blocks only: the state is 
+ * forgotten at every label and after every branch.
+ */
+public class Peephole {
+	
+	/* Returns the instructions that survive, in their original order */
+	public List<Instruction> optimize(List<Instruction> instructions) {
+		int n = instructions.size();
+		boolean[] dead = new boolean[n];
+		Instruction[] constants = new Instruction[Opcodes.numregs];
+		for (int i = 0; i < n; i++) {
+			Instruction inst = instructions.get(i);
+			if (inst.getCodeLabel() != null) Arrays.fill(constants, null);
+			if (i < n-1 && useless(inst, constants)) {
+				dead[i] = true;
+				continue;
+			}
+			Integer d = inst.getDestRegister();
+			if (d != null) constants[d] = (inst instanceof Movi || inst instanceof Movhi) ? inst : null;
+			if (inst.endsBasicBlock()) Arrays.fill(constants, null);
+		}
+		boolean[] overwritten = new boolean[Opcodes.numregs];
+		for (int i = n-1; i >= 0; i--) {
+			if (dead[i]) continue;
+			Instruction inst = instructions.get(i);
+			if (inst.endsBasicBlock()) Arrays.fill(overwritten, false);
+			Integer d = inst.getDestRegister();
+			if (d != null && overwritten[d] && i < n-1 && pure(inst)) {
+				dead[i] = true;
+				continue;
+			}
+			if (d != null) overwritten[d] = true;
+			for (Integer r : inst.getSourceRegisters()) overwritten[r] = false;
+			if (inst.getCodeLabel() != null) Arrays.fill(overwritten, false);
+		}
+		List<Instruction> kept = new ArrayList<Instruction>(n);
+		for (int i = 0; i < n; i++) if (!dead[i]) kept.add(instructions.get(i));
+		return kept;
+	}
+	
+	private static Boolean useless(Instruction inst, Instruction[] constants) {
+		if (inst instanceof Nop) return true;
+		if (!pure(inst)) return false;
+		Integer d = inst.getDestRegister();
+		if (d == 0) return true;
+		if (inst instanceof Movd && inst.getRa().equals(d)) return true;
+		Instruction last = constants[d];
+		return last != null && last.getOpcode().equals(inst.getOpcode()) 
+				&& last.getBinaryRepresentation().equals(inst.getBinaryRepresentation())
+				&& last.getLabel().equals(inst.getLabel());
+	}
+	
+	/* Only writes a register */
+	private static Boolean pure(Instruction inst) {
+		return inst.getDestRegister() != null && !inst.readsMemory() && !inst.writesMemory() 
+				&& !inst.endsBasicBlock();
+	}
+}
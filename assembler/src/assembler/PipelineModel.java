@@ -0,0 +1,112 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Properties;
+
+/**
+ * 
+ * @author raul
+ *
+ * Timing of the pipeline as seen by the instruction scheduler: for every
+ * opcode, the cycles from its issue until a dependent instruction can use
+ * its result. rob_num_entries comes from core_defs.vhd; the latencies are
+ * estimates for a single-issue pipeline with forwarding and an L1D hit on
+ * every load, and can be overridden with a properties file:
+ * 
+ * latency.ld = 3
+ * latency.addd = 1
+ * issue_width = 1
+ * rob_num_entries = 4
+ * taken_branch_penalty = 2
+ */
+public class PipelineModel {
+	private static final String[] mnemonics = {"nop", "halt", "addd", "subd", "movd", 
+		"movi", "movhi", "ld", "sd", "jmp", "beq"};
+	private HashMap<Integer,Integer> latencies;
+	private Integer issuewidth;
+	private Integer robentries;
+	private Integer branchpenalty;
+	
+	public PipelineModel() {
+		this.latencies = new HashMap<Integer,Integer>();
+		for (String m : mnemonics) setLatency(m, 1);
+		setLatency("ld", 3);
+		this.issuewidth = 1;
+		this.robentries = 4;
+		this.branchpenalty = 2;
+	}
+	
+	public static PipelineModel load(String path) throws IOException {
+		PipelineModel model = new PipelineModel();
+		Properties properties = new Properties();
+		Reader reader = new FileReader(path);
+		try {
+			properties.load(reader);
+		} finally {
+			reader.close();
+		}
+		try {
+			for (String key : properties.stringPropertyNames()) {
+				Integer value = Integer.parseInt(properties.getProperty(key).trim());
+				if (value < (key.equals("taken_branch_penalty") ? 0 : 1))
+					throw new IOException("Invalid value for " + key + ": " + value);
+				if (key.startsWith("latency.")) {
+					if (!model.setLatency(key.substring("latency.".length()), value))
+						throw new IOException("Unknown instruction in " + key);
+				}
+				else if (key.equals("issue_width")) model.issuewidth = value;
+				else if (key.equals("rob_num_entries")) model.robentries = value;
+				else if (key.equals("taken_branch_penalty")) model.branchpenalty = value;
+				else throw new IOException("Unknown pipeline parameter " + key);
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("Malformed pipeline description: " + e.getMessage());
+		}
+		return model;
+	}
+	
+	public Boolean setLatency(String mnemonic, Integer cycles) {
+		String opcode = Opcodes.OpStringToOpcode(mnemonic);
+		if (opcode == null) return false;
+		latencies.put(Integer.parseInt(opcode, 2), cycles);
+		return true;
+	}
+	
+	public Integer getLatency(Instruction i) {
+		Integer latency = latencies.get(i.getOpcode());
+		return latency == null ? 1 : latency;
+	}
+	
+	public Integer getIssueWidth() {
+		return this.issuewidth;
+	}
+	
+	public Integer getRobEntries() {
+		return this.robentries;
+	}
+	
+	public Integer getTakenBranchPenalty() {
+		return this.branchpenalty;
+	}
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 
+ * @author raul
+ *
+ * Per-instruction execution profile of a program, read from a file.
+ * Counters live in a flat array indexed by (pc - textbase) >> 2, textbase
+ * being DATASEGSIZE unless the program moves its .text section.
+ * Cache misses can optionally be attributed to the instruction causing them.
+ * 
+ * Profile file format, one line per executed instruction:
+ * <pc in hex> <count> [<misses>]
+ */
+public class Profile {
+	private long[] counts;
+	private long[] misses;
+	private final int textbase;
+	
+	private Profile(Integer textbase, Integer codewords) {
+		this.textbase = textbase;
+		this.counts = new long[codewords];
+	}
+	
+	public long getCount(int pc) {
+		int index = (pc - textbase) >> 2;
+		if (index < 0 || index >= counts.length) return 0;
+		return counts[index];
+	}
+	
+	public long getMisses(int pc) {
+		int index = (pc - textbase) >> 2;
+		if (misses == null || index < 0 || index >= misses.length) return 0;
+		return misses[index];
+	}
+	
+	public Boolean hasMisses() {
+		return misses != null;
+	}
+	
+	public long getTotalCount() {
+		long total = 0;
+		for (long c : counts) total += c;
+		return total;
+	}
+	
+	/* Moves the count recorded at every address of moved to the address it
+	 * maps to, after the code has been reordered. Addresses not in moved 
+	 * lose their counts.
+	 */
+	public void relocate(Map<Integer,Integer> moved) {
+		int size = counts.length;
+		for (Integer to : moved.values()) size = Math.max(size, ((to - textbase) >> 2) + 1);
+		long[] newcounts = new long[size];
+		long[] newmisses = misses == null ? null : new long[size];
+		for (Map.Entry<Integer,Integer> m : moved.entrySet()) {
+			int from = (m.getKey() - textbase) >> 2, to = (m.getValue() - textbase) >> 2;
+			if (from < 0 || from >= counts.length) continue;
+			newcounts[to] = counts[from];
+			if (misses != null) newmisses[to] = misses[from];
+		}
+		counts = newcounts;
+		misses = newmisses;
+	}
+	
+	public static Profile load(String path, Integer textbase) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(path));
+		Profile profile = new Profile(textbase, 64);
+		String line = null;
+		try {
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				String[] fields = line.split("\\s+");
+				if (fields.length < 2 || fields.length > 3) throw new IOException("Malformed profile line: " + line);
+				int pc = Integer.parseInt(fields[0].replaceFirst("^0[xX]", ""), 16);
+				int index = (pc - profile.textbase) >> 2;
+				if (index < 0) throw new IOException("Address out of the text segment: " + fields[0]);
+				if (index >= profile.counts.length) profile.grow(Math.max(index+1, 2*profile.counts.length));
+				profile.counts[index] += Long.parseLong(fields[1]);
+				if (fields.length > 2) {
+					if (profile.misses == null) profile.misses = new long[profile.counts.length];
+					profile.misses[index] += Long.parseLong(fields[2]);
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("Malformed profile line: " + line);
+		} finally {
+			reader.close();
+		}
+		return profile;
+	}
+	
+	private void grow(int size) {
+		counts = Arrays.copyOf(counts, size);
+		if (misses != null) misses = Arrays.copyOf(misses, size);
+	}
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * 
+ * @author raul
+ *
+ * Raw big-endian image, the format of the assembler's output file.
+ */
+public class RawObjectWriter implements ObjectWriter {
+	private OutputStream out;
+	
+	public RawObjectWriter(String path) throws IOException {
+		this.out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16);
+	}
+
+	@Override
+	public void writeData(Integer address, byte[] bytes, Integer offset, Integer length) throws IOException {
+		out.write(bytes, offset, length);
+	}
+
+	@Override
+	public void writeFill(Integer address, Integer length, byte value) throws IOException {
+		byte[] fill = new byte[Math.min(length, 1 << 16)];
+		Arrays.fill(fill, value);
+		for (int left = length; left > 0; left -= fill.length)
+			out.write(fill, 0, Math.min(left, fill.length));
+	}
+
+	@Override
+	public void writeRun(Integer address, Integer length, Integer pattern) throws IOException {
+		byte[] run = DataSegment.runBytes(Math.min(length, 1 << 16), pattern);
+		for (int left = length; left > 0; left -= run.length)
+			out.write(run, 0, Math.min(left, run.length));
+	}
+
+	@Override
+	public void writeInstruction(Integer address, Integer word) throws IOException {
+		out.write(AssemblerParser.intToByteArray(word));
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -42,18 +42,24 @@ import java.util.regex.Pattern;
  * 
  */
 public abstract class Rtype extends Instruction {
-	private static Pattern opsexp = null;
+	private static final Pattern opsexp = Pattern.compile("([ ]*r([0-9]{1,})[ ]*,[ ]*r([0-9]{1,})[ ]*,[ ]*r([0-9]{1,})[ ]*)", Pattern.CASE_INSENSITIVE);
 	
 	public Rtype() {
 		super();
-		if (opsexp == null)
-			opsexp = Pattern.compile("([ ]*r([0-9]{1,})[ ]*,[ ]*r([0-9]{1,})[ ]*,[ ]*r([0-9]{1,})[ ]*)", Pattern.CASE_INSENSITIVE);
 	}
 	public Rtype(String opcode, Integer address) {
 		super(opcode,address);
 		this.zerofillsize = Opcodes.bitsinst - 3*Opcodes.bitsreg;
-		if (opsexp == null)
-			opsexp = Pattern.compile("([ ]*r([0-9]{1,})[ ]*,[ ]*r([0-9]{1,})[ ]*,[ ]*r([0-9]{1,})[ ]*)", Pattern.CASE_INSENSITIVE);
+	}
+	
+	@Override
+	public Integer getDestRegister() {
+		return this.rd;
+	}
+	
+	@Override
+	public Integer[] getSourceRegisters() {
+		return new Integer[] {this.ra, this.rb};
 	}
 	
 	@Override
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 
+ * @author raul
+ *
+ * Reorders the instructions of every basic block to hide latencies, 
+ * following a PipelineModel. A block starts at a labelled instruction and
+ * ends after a beq, jmp or halt, which stays last. Inside a block the
+ * dependencies through registers (r0 excluded, as it always reads 0) and 
+ * through memory (stores are not reordered with any other load or store)
+ * form a DAG, which is list scheduled giving priority to the instructions
+ * on the longest latency path. A block is only rewritten if its estimated
+ * cycle count improves.
+ * 
+ * Labels only mark block starts and branches do not move, so no label
+ * address or branch offset changes.
+ */
+public class Scheduler {
+	private final PipelineModel model;
+	
+	private static class Block {
+		List<Instruction> insts;
+		List<List<int[]>> succs;
+		int[] preds;
+		int[] heights;
+		int[] latencies;
+	}
+	
+	public Scheduler(PipelineModel model) {
+		this.model = model;
+	}
+	
+	/* Schedules every block of the list in place and returns the estimated
+	 * number of cycles saved, each block counted once.
+	 */
+	public Integer schedule(List<Instruction> instructions) {
+		int saved = 0;
+		int start = 0;
+		for (int i = 0; i < instructions.size(); i++) {
+			if (i > start && instructions.get(i).getCodeLabel() != null) {
+				saved += scheduleBlock(instructions, start, i);
+				start = i;
+			}
+			if (instructions.get(i).endsBasicBlock()) {
+				saved += scheduleBlock(instructions, start, i+1);
+				start = i+1;
+			}
+		}
+		saved += scheduleBlock(instructions, start, instructions.size());
+		return saved;
+	}
+	
+	private int scheduleBlock(List<Instruction> instructions, int from, int to) {
+		if (to - from < 2) return 0;
+		Block b = build(instructions.subList(from, to));
+		int n = b.insts.size();
+		int fixed = b.insts.get(n-1).endsBasicBlock() ? n-1 : n;
+		int[] order = listSchedule(b, fixed);
+		int[] original = new int[n];
+		for (int i = 0; i < n; i++) original[i] = i;
+		int saved = cycles(b, original) - cycles(b, order);
+		if (saved <= 0) return 0;
+		Integer base = b.insts.get(0).getInstAddress();
+		String label = b.insts.get(0).getCodeLabel();
+		List<Instruction> scheduled = new ArrayList<Instruction>(n);
+		for (int i = 0; i < n; i++) scheduled.add(b.insts.get(order[i]));
+		for (int i = 0; i < n; i++) {
+			Instruction inst = scheduled.get(i);
+			inst.setInstAddress(base + i*Opcodes.bytesinst);
+			inst.setCodeLabel(i == 0 ? label : null);
+			instructions.set(from + i, inst);
+		}
+		return saved;
+	}
+	
+	/* Dependency DAG of a block. Every edge goes from an earlier to a later
+	 * instruction and holds the cycles the later one has to wait: the 
+	 * producer latency for true dependencies, 0 for the ordering ones.
+	 */
+	private Block build(List<Instruction> insts) {
+		int n = insts.size();
+		Block b = new Block();
+		b.insts = new ArrayList<Instruction>(insts);
+		b.succs = new ArrayList<List<int[]>>(n);
+		b.preds = new int[n];
+		b.heights = new int[n];
+		b.latencies = new int[n];
+		int[] writer = new int[Opcodes.numregs];
+		List<List<Integer>> readers = new ArrayList<List<Integer>>(Opcodes.numregs);
+		for (int r = 0; r < Opcodes.numregs; r++) {
+			writer[r] = -1;
+			readers.add(new ArrayList<Integer>());
+		}
+		int store = -1;
+		List<Integer> loads = new ArrayList<Integer>();
+		for (int k = 0; k < n; k++) {
+			Instruction inst = b.insts.get(k);
+			b.succs.add(new ArrayList<int[]>());
+			b.latencies[k] = model.getLatency(inst);
+			for (Integer r : inst.getSourceRegisters()) {
+				if (r == 0) continue;
+				if (writer[r] >= 0) edge(b, writer[r], k, b.latencies[writer[r]]);
+				readers.get(r).add(k);
+			}
+			Integer d = inst.getDestRegister();
+			if (d != null && d != 0) {
+				if (writer[d] >= 0) edge(b, writer[d], k, 0);
+				for (Integer r : readers.get(d)) if (r != k) edge(b, r, k, 0);
+				readers.get(d).clear();
+				writer[d] = k;
+			}
+			if (inst.writesMemory()) {
+				if (store >= 0) edge(b, store, k, 0);
+				for (Integer l : loads) edge(b, l, k, 0);
+				loads.clear();
+				store = k;
+			} else if (inst.readsMemory()) {
+				if (store >= 0) edge(b, store, k, 0);
+				loads.add(k);
+			}
+			if (k == n-1 && inst.endsBasicBlock())
+				for (int j = 0; j < k; j++) edge(b, j, k, 0);
+		}
+		for (int k = n-1; k >= 0; k--) {
+			b.heights[k] = b.latencies[k];
+			for (int[] e : b.succs.get(k))
+				b.heights[k] = Math.max(b.heights[k], e[1] + b.heights[e[0]]);
+		}
+		return b;
+	}
+	
+	private static void edge(Block b, int from, int to, int latency) {
+		b.succs.get(from).add(new int[] {to, latency});
+		b.preds[to]++;
+	}
+	
+	/* Issues, cycle by cycle, the ready instructions with the longest path
+	 * to the end of the block first; the block terminator, if any, last.
+	 */
+	private int[] listSchedule(final Block b, int fixed) {
+		int n = b.insts.size();
+		final int[] earliest = new int[n];
+		int[] preds = b.preds.clone();
+		int[] order = new int[n];
+		PriorityQueue<Integer> pending = new PriorityQueue<Integer>(n, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer x, Integer y) {
+				return earliest[x] != earliest[y] ? earliest[x] - earliest[y] : x - y;
+			}
+		});
+		PriorityQueue<Integer> available = new PriorityQueue<Integer>(n, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer x, Integer y) {
+				return b.heights[x] != b.heights[y] ? b.heights[y] - b.heights[x] : x - y;
+			}
+		});
+		for (int k = 0; k < fixed; k++) if (preds[k] == 0) pending.add(k);
+		int issued = 0;
+		int cycle = 0;
+		while (issued < fixed) {
+			while (!pending.isEmpty() && earliest[pending.peek()] <= cycle) available.add(pending.poll());
+			if (available.isEmpty()) {
+				cycle = earliest[pending.peek()];
+				continue;
+			}
+			for (int w = 0; w < model.getIssueWidth() && !available.isEmpty(); w++) {
+				int k = available.poll();
+				order[issued++] = k;
+				for (int[] e : b.succs.get(k)) {
+					earliest[e[0]] = Math.max(earliest[e[0]], cycle + e[1]);
+					if (--preds[e[0]] == 0 && e[0] < fixed) pending.add(e[0]);
+				}
+			}
+			cycle++;
+		}
+		if (fixed < n) order[fixed] = fixed;
+		return order;
+	}
+	
+	/* Cycles to issue the block in the given order on an in-order pipeline */
+	private int cycles(Block b, int[] order) {
+		int n = order.length;
+		int[] ready = new int[n];
+		int cycle = 0;
+		int slots = 0;
+		int last = 0;
+		for (int i = 0; i < n; i++) {
+			int k = order[i];
+			int t = Math.max(cycle, ready[k]);
+			if (t == cycle && slots == model.getIssueWidth()) t++;
+			if (t > cycle) slots = 0;
+			cycle = t;
+			slots++;
+			last = Math.max(last, t + b.latencies[k]);
+			for (int[] e : b.succs.get(k)) ready[e[0]] = Math.max(ready[e[0]], t + e[1]);
+		}
+		return last;
+	}
+}
@@ -28,5 +28,20 @@ public class Sd extends MBIRtype {
 	public Boolean acceptsCodeLabels() {
 		return false;
 	}
+	
+	@Override
+	public Integer getDestRegister() {
+		return null;
+	}
+	
+	@Override
+	public Integer[] getSourceRegisters() {
+		return new Integer[] {this.rd, this.ra};
+	}
+	
+	@Override
+	public Boolean writesMemory() {
+		return true;
+	}
 
 }
@@ -0,0 +1,379 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 
+ * @author raul
+ *
+ * Reads a source file into memory for both passes of the AssemblerParser,
+ * expanding the preprocessing directives:
+ * 
+ * .include "file"			inserts file, relative to the including file
+ * .macro name [p1, p2...]	starts the definition of a macro, up to .endm
+ * .endm
+ * name [a1, a2...]			expands macro name, replacing \p1, \p2... by the
+ * 							arguments and \@ by a number unique to this use
+ * 
+ * Lines are split into units once: the file an .include names, and the 
+ * label and first word used to recognize macro uses. Included files are 
+ * kept as units, so including the same file many times (or again in a 
+ * later parseFile) neither reads it nor splits its lines again,
+ * unless its modification time or length changed. Only the most recently
+ * used included files are kept. Macro bodies are validated and split into
+ * text and parameter pieces when defined, so every use is expanded by
+ * concatenation, and lines without parameters are reused as they are.
+ * 
+ * Every resulting line remembers the line of the top-level file it comes
+ * from, so addresses map back to the file being assembled.
+ */
+public class SourceReader {
+	private static final Integer maxdepth = 64;
+	private static final Integer cachedfiles = 64;
+	private static final Pattern opcodes = Pattern.compile("(nop|halt|addd|subd|movd|movi|movhi|ld|sd|jmp|beq)",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern spaces = Pattern.compile("\\s+");
+	
+	public static class SourceLine {
+		private final String text;
+		private final Integer line;
+		private final String origin;
+		private final String opcode;
+		
+		public SourceLine(String text, Integer line, String origin, String opcode) {
+			this.text = text;
+			this.line = line;
+			this.origin = origin;
+			this.opcode = opcode;
+		}
+		
+		public String getText() {
+			return this.text;
+		}
+		
+		/* Mnemonic of the instruction on this line in lower case, or null 
+		 * if its first word (after the label) is not one
+		 */
+		public String getOpcode() {
+			return this.opcode;
+		}
+		
+		/* Line of the top-level file this line was read or expanded from */
+		public Integer getLine() {
+			return this.line;
+		}
+		
+		@Override
+		public String toString() {
+			return origin == null ? line.toString() : line + " (" + origin + ")";
+		}
+	}
+	
+	/* A line as read, with what the preprocessor needs from it. The label
+	 * and first word are split once, the first time they are needed, and
+	 * the mnemonic found there is handed on to the parser.
+	 */
+	private static class Unit {
+		final String text;
+		final String trimmed;
+		final File include;
+		private String label;
+		private String word;
+		private String operands;
+		private String opcode;
+		
+		/* file is the one an .include on this line is relative to */
+		Unit(String text, File file) {
+			this.text = text;
+			this.trimmed = text.trim();
+			this.include = trimmed.startsWith(".include") ? included(trimmed, file) : null;
+		}
+		
+		/* The file named by an .include line, or null if it is malformed */
+		private static File included(String directive, File file) {
+			int open = directive.indexOf('"');
+			int close = directive.lastIndexOf('"');
+			if (open < 0 || close <= open) return null;
+			File included = new File(directive.substring(open+1, close));
+			if (!included.isAbsolute()) included = new File(file.getAbsoluteFile().getParentFile(), included.getPath());
+			return included;
+		}
+		
+		private void split() {
+			if (word != null) return;
+			String rest = text;
+			String[] parts = text.split(":", 2);
+			if (parts.length == 2 && !parts[0].trim().isEmpty() && !parts[0].trim().contains(" ")) {
+				label = parts[0].trim();
+				rest = parts[1];
+			}
+			String[] words = spaces.split(uncommented(rest).trim(), 2);
+			word = words[0];
+			operands = words.length > 1 ? words[1] : null;
+			opcode = opcodes.matcher(word).matches() ? word.toLowerCase() : null;
+		}
+		
+		/* text without its ! comment, if any outside quotes */
+		static String uncommented(String text) {
+			boolean quoted = false;
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c == '"') quoted = !quoted;
+				else if (c == '!' && !quoted) return text.substring(0, i);
+			}
+			return text;
+		}
+		
+		/* Label defined on the line, if any */
+		String getLabel() {
+			split();
+			return label;
+		}
+		
+		/* First word of the statement, a macro name if this is a macro use */
+		String getWord() {
+			split();
+			return word;
+		}
+		
+		/* First word of the statement in lower case if it is a mnemonic */
+		String getOpcode() {
+			split();
+			return opcode;
+		}
+		
+		/* Text after the first word, the arguments of a macro use */
+		String getOperands() {
+			split();
+			return operands;
+		}
+	}
+	
+	private static class CachedFile {
+		long modified;
+		long length;
+		List<Unit> units;
+	}
+	
+	private static class Macro {
+		String name;
+		String origin;
+		List<String> params = new ArrayList<String>();
+		List<String[]> texts = new ArrayList<String[]>();
+		List<int[]> args = new ArrayList<int[]>();
+		/* Body lines without parameters, null for the others */
+		List<Unit> units = new ArrayList<Unit>();
+	}
+	
+	private LinkedHashMap<String,CachedFile> files;
+	private HashMap<String,Macro> macros;
+	private Integer uses;
+	
+	public SourceReader() {
+		this.files = new LinkedHashMap<String,CachedFile>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,CachedFile> eldest) {
+				return size() > cachedfiles;
+			}
+		};
+		this.macros = new HashMap<String,Macro>();
+	}
+	
+	public List<SourceLine> read(String path) throws IOException, IllegalAsmException {
+		List<SourceLine> out = new ArrayList<SourceLine>();
+		macros.clear();
+		uses = 0;
+		File file = new File(path);
+		List<Unit> units = units(file, readLines(file));
+		for (int i = 0; i < units.size(); i++)
+			i = process(units, i, file, i+1, null, out, 0);
+		return out;
+	}
+	
+	/* Appends line i of units to out, expanding it if it is a directive or
+	 * a macro use. Returns the index of the last line consumed.
+	 */
+	private int process(List<Unit> units, int i, File file, Integer topline, String origin, 
+			List<SourceLine> out, int depth) throws IOException, IllegalAsmException {
+		Unit unit = units.get(i);
+		String where = origin == null ? "line " + topline : origin;
+		if (depth > maxdepth) throw new IllegalAsmException("Recursive .include or macro at " + where);
+		if (unit.trimmed.startsWith(".include")) {
+			if (unit.include == null) throw new IllegalAsmException("Malformed .include at " + where);
+			List<Unit> included = load(unit.include);
+			for (int j = 0; j < included.size(); j++)
+				j = process(included, j, unit.include, topline, unit.include.getName() + ":" + (j+1), out, depth+1);
+			return i;
+		} else if (unit.trimmed.startsWith(".macro")) {
+			return define(units, i, file, where);
+		} else if (unit.trimmed.startsWith(".endm")) {
+			throw new IllegalAsmException(".endm without .macro at " + where);
+		}
+		Macro macro = macros.isEmpty() ? null : macros.get(unit.getWord());
+		if (macro == null) {
+			out.add(new SourceLine(unit.text, topline, origin, unit.getOpcode()));
+			return i;
+		}
+		List<String> args = new ArrayList<String>();
+		if (unit.getOperands() != null && !unit.getOperands().trim().isEmpty())
+			for (String a : unit.getOperands().split(",")) args.add(a.trim());
+		if (args.size() != macro.params.size())
+			throw new IllegalAsmException("Macro " + macro.name + " takes " + macro.params.size() 
+					+ " arguments, " + args.size() + " given at " + where);
+		String unique = (uses++).toString();
+		List<Unit> expanded = new ArrayList<Unit>(macro.texts.size());
+		for (int j = 0; j < macro.texts.size(); j++) {
+			if (macro.units.get(j) != null) {
+				expanded.add(macro.units.get(j));
+				continue;
+			}
+			String[] texts = macro.texts.get(j);
+			int[] params = macro.args.get(j);
+			StringBuilder sb = new StringBuilder(texts[0]);
+			for (int k = 0; k < params.length; k++) {
+				sb.append(params[k] < 0 ? unique : args.get(params[k]));
+				sb.append(texts[k+1]);
+			}
+			expanded.add(new Unit(sb.toString(), file));
+		}
+		if (unit.getLabel() != null) {
+			if (expanded.isEmpty() || expanded.get(0).text.contains(":"))
+				throw new IllegalAsmException("Label " + unit.getLabel() + " cannot be placed on macro " + macro.name + " at " + where);
+			expanded.set(0, new Unit(unit.getLabel() + ": " + expanded.get(0).trimmed, file));
+		}
+		for (int j = 0; j < expanded.size(); j++)
+			j = process(expanded, j, file, topline, "macro " + macro.name, out, depth+1);
+		return i;
+	}
+	
+	/* Reads a macro definition starting at line i and returns the index
+	 * of its .endm line.
+	 */
+	private int define(List<Unit> units, int i, File file, String where) throws IllegalAsmException {
+		String[] header = Unit.uncommented(units.get(i).trimmed.substring(".macro".length())).trim().split("\\s+", 2);
+		Macro macro = new Macro();
+		macro.name = header[0];
+		macro.origin = where;
+		if (macro.name.isEmpty() || opcodes.matcher(macro.name).matches() || macro.name.startsWith("."))
+			throw new IllegalAsmException("Invalid macro name at " + where);
+		if (macros.containsKey(macro.name))
+			throw new IllegalAsmException("Macro " + macro.name + " defined twice, at " + where);
+		if (header.length > 1)
+			for (String p : header[1].split(","))
+				if (!p.trim().isEmpty()) macro.params.add(p.trim());
+		int j;
+		for (j = i+1; j < units.size(); j++) {
+			Unit body = units.get(j);
+			String trimmed = body.trimmed;
+			if (trimmed.startsWith(".endm")) break;
+			if (trimmed.startsWith(".macro"))
+				throw new IllegalAsmException("Nested macro definition in " + macro.name);
+			/* A parameter in the first word is only known when the macro is used */
+			String word = body.getWord();
+			if (!word.isEmpty() && !word.startsWith(".") && body.getOpcode() == null 
+					&& word.indexOf('\\') < 0 && !macros.containsKey(word))
+				throw new IllegalAsmException("No opcode found in line " + (j-i) + " of macro " + macro.name + " defined at " + where);
+			tokenize(macro, body);
+		}
+		if (j == units.size()) throw new IllegalAsmException("Macro " + macro.name + " has no .endm");
+		macros.put(macro.name, macro);
+		return j;
+	}
+	
+	private void tokenize(Macro macro, Unit unit) throws IllegalAsmException {
+		String body = unit.text;
+		List<String> texts = new ArrayList<String>();
+		List<Integer> params = new ArrayList<Integer>();
+		int start = 0;
+		int k = body.indexOf('\\');
+		while (k >= 0) {
+			int end = k+1;
+			int param;
+			if (end < body.length() && body.charAt(end) == '@') {
+				param = -1;
+				end++;
+			} else {
+				while (end < body.length() && (Character.isLetterOrDigit(body.charAt(end)) || body.charAt(end) == '_'))
+					end++;
+				param = macro.params.indexOf(body.substring(k+1, end));
+				if (param < 0) 
+					throw new IllegalAsmException("Unknown parameter " + body.substring(k, end) + " in macro " + macro.name);
+			}
+			texts.add(body.substring(start, k));
+			params.add(param);
+			start = end;
+			k = body.indexOf('\\', end);
+		}
+		texts.add(body.substring(start));
+		int[] args = new int[params.size()];
+		for (int p = 0; p < args.length; p++) args[p] = params.get(p);
+		macro.texts.add(texts.toArray(new String[texts.size()]));
+		macro.args.add(args);
+		/* An .include is resolved against the file the macro is used in */
+		macro.units.add(args.length == 0 && !unit.trimmed.startsWith(".include") ? unit : null);
+	}
+	
+	/* The units of an included file, from the cache while it is unchanged */
+	private List<Unit> load(File file) throws IOException {
+		String key = file.getCanonicalPath();
+		CachedFile cached = files.get(key);
+		if (cached != null && cached.modified == file.lastModified() && cached.length == file.length()) 
+			return cached.units;
+		cached = new CachedFile();
+		cached.modified = file.lastModified();
+		cached.length = file.length();
+		cached.units = Collections.unmodifiableList(units(file, readLines(file)));
+		files.put(key, cached);
+		return cached.units;
+	}
+	
+	private static List<Unit> units(File file, List<String> lines) {
+		List<Unit> units = new ArrayList<Unit>(lines.size());
+		for (String line : lines) units.add(new Unit(line, file));
+		return units;
+	}
+	
+	private static List<String> readLines(File file) throws IOException {
+		if (!file.isFile()) throw new FileNotFoundException(file.getPath());
+		List<String> lines = new ArrayList<String>();
+		BufferedReader filereader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = filereader.readLine()) != null) lines.add(line);
+		} finally {
+			filereader.close();
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 
+ * @author raul
+ *
+ * Sparse image: only the bytes the program defines are stored, as records
+ * of consecutive bytes, so padding between segments placed far apart in
+ * the address space takes no room. Layout (big-endian):
+ * 
+ * "VSPR" | (address length bytes... | address (0x80000000|length) pattern)*
+ * 
+ * Consecutive data items and instructions are merged into one record;
+ * fills are skipped, as loaders treat missing addresses as untouched.
+ * Runs (.space, .fill) are stored as a descriptor: the top bit of the
+ * length marks it, and the record holds the 32-bit word repeated over
+ * length bytes instead of the bytes themselves.
+ */
+public class SparseObjectWriter implements ObjectWriter {
+	public static final Integer magic = 0x56535052;
+	public static final Integer runflag = 0x80000000;
+	private DataOutputStream out;
+	private byte[] record = new byte[1 << 12];
+	private int recordlength = 0;
+	private int recordaddress = 0;
+	
+	public SparseObjectWriter(String path) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+		this.out.writeInt(magic);
+	}
+
+	@Override
+	public void writeData(Integer address, byte[] bytes, Integer offset, Integer length) throws IOException {
+		if (recordlength > 0 && address != recordaddress + recordlength) flush();
+		if (recordlength == 0) recordaddress = address;
+		if (recordlength + length > record.length)
+			record = Arrays.copyOf(record, Math.max(2*record.length, recordlength + length));
+		System.arraycopy(bytes, offset, record, recordlength, length);
+		recordlength += length;
+	}
+
+	@Override
+	public void writeFill(Integer address, Integer length, byte value) throws IOException {
+		flush();
+	}
+
+	/* Runs are defined bytes, so unlike fills they are stored, but only as
+	 * a descriptor, whatever their length.
+	 */
+	@Override
+	public void writeRun(Integer address, Integer length, Integer pattern) throws IOException {
+		flush();
+		out.writeInt(address);
+		out.writeInt(runflag | length);
+		out.writeInt(pattern);
+	}
+
+	@Override
+	public void writeInstruction(Integer address, Integer word) throws IOException {
+		writeData(address, AssemblerParser.intToByteArray(word), 0, Opcodes.bytesinst);
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		out.close();
+	}
+	
+	private void flush() throws IOException {
+		if (recordlength == 0) return;
+		out.writeInt(recordaddress);
+		out.writeInt(recordlength);
+		out.write(record, 0, recordlength);
+		recordlength = 0;
+	}
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 
+ * @author raul
+ *
+ * Static estimate of how fast every basic block runs on the pipeline 
+ * described by a PipelineModel, in the spirit of llvm-mca. A block starts
+ * at a label (or branch target) and ends after a beq, jmp or halt.
+ * 
+ * The block is run as a loop for a number of iterations on an in-order 
+ * model: up to issue_width instructions issue per cycle, in program order,
+ * an instruction waits for its source registers (latency of the producer,
+ * r0 always ready) and for a free ROB entry, and entries are released in
+ * order once complete, issue_width per cycle. When the block ends with a 
+ * jmp, or a beq back to its start, every iteration also pays the taken
+ * branch penalty. Registers carry over between iterations, so loop carried
+ * dependencies show. Iterations stop early once the cycles each one adds
+ * are stable, and long blocks run fewer of them (only one if longer than
+ * maxsimulated, as how iterations overlap no longer matters), so the cost
+ * is linear in the size of the program.
+ * 
+ * The cycles lost waiting are charged to dependencies (and to the
+ * instruction that lost most, with the producer it last waited for), to a full ROB or to taken
+ * branches. A block losing none is bound by the issue width.
+ */
+public class ThroughputAnalyzer {
+	/* Instructions simulated per block, at least one iteration */
+	private static final int maxsimulated = 1 << 12;
+	private final PipelineModel model;
+	private final Integer iterations;
+	
+	public static class Report {
+		public final Integer address;
+		public final String label;
+		public final Integer instructions;
+		/* From an empty pipeline to the last instruction retired */
+		public final Integer cycles;
+		/* Cycles per iteration when run as a loop */
+		public final Double throughput;
+		public final String bottleneck;
+		
+		public Report(Integer address, String label, Integer instructions, Integer cycles, 
+				Double throughput, String bottleneck) {
+			this.address = address;
+			this.label = label;
+			this.instructions = instructions;
+			this.cycles = cycles;
+			this.throughput = throughput;
+			this.bottleneck = bottleneck;
+		}
+		
+		public Double getIPC() {
+			return instructions / throughput;
+		}
+	}
+	
+	public ThroughputAnalyzer(PipelineModel model, Integer iterations) {
+		this.model = model;
+		this.iterations = iterations;
+	}
+	
+	/* One report per basic block, in address order */
+	public List<Report> analyze(List<Instruction> instructions) {
+		List<Report> reports = new ArrayList<Report>();
+		for (List<Instruction> block : CodeLayout.blocks(instructions)) reports.add(analyzeBlock(block));
+		return reports;
+	}
+	
+	private Report analyzeBlock(List<Instruction> block) {
+		int n = block.size();
+		int width = model.getIssueWidth();
+		int rob = model.getRobEntries();
+		int[] latency = new int[n];
+		int[] dest = new int[n];
+		int[] sources = new int[2*n];
+		for (int i = 0; i < n; i++) operands(block.get(i), i, latency, dest, sources);
+		Instruction first = block.get(0);
+		Instruction last = block.get(n-1);
+		Boolean loops = last instanceof Jmp || (last instanceof Beq 
+				&& last.getInstAddress() + (last.getOffset() << 2) == first.getInstAddress());
+		int penalty = loops ? model.getTakenBranchPenalty() : 0;
+		
+		long[] ready = new long[Opcodes.numregs];
+		int[] writer = new int[Opcodes.numregs];
+		Arrays.fill(writer, -1);
+		long[] robfree = new long[rob];
+		long[] retirements = new long[width];
+		long[] lost = new long[n];
+		int[] cause = new int[n];
+		long cycle = 0;
+		int slots = 0;
+		long lastretire = 0;
+		long seq = 0;
+		long depstall = 0;
+		long robstall = 0;
+		long branchstall = 0;
+		long firstpass = 0;
+		long previous = 0;
+		long delta = -1;
+		int stable = 0;
+		int done = 0;
+		int runs = Math.max(1, Math.min(iterations, maxsimulated / n));
+		while (done < runs) {
+			for (int i = 0; i < n; i++) {
+				long earliest = slots == width ? cycle+1 : cycle;
+				long operands = earliest;
+				int producer = -1;
+				for (int k = 2*i; k < 2*i+2; k++) {
+					int r = sources[k];
+					if (r > 0 && ready[r] > operands) {
+						operands = ready[r];
+						producer = writer[r];
+					}
+				}
+				long entry = seq >= rob ? robfree[(int) (seq % rob)] : 0;
+				long t = Math.max(earliest, Math.max(operands, entry));
+				if (t > earliest) {
+					if (operands >= entry) {
+						depstall += t - earliest;
+						lost[i] += t - earliest;
+						cause[i] = producer;
+					} else robstall += t - earliest;
+				}
+				if (t > cycle) {
+					cycle = t;
+					slots = 0;
+				}
+				slots++;
+				long complete = t + latency[i];
+				if (dest[i] >= 0) {
+					ready[dest[i]] = complete;
+					writer[dest[i]] = i;
+				}
+				long retire = Math.max(complete, lastretire);
+				if (seq >= width) retire = Math.max(retire, retirements[(int) (seq % width)] + 1);
+				retirements[(int) (seq % width)] = retire;
+				robfree[(int) (seq % rob)] = retire;
+				lastretire = retire;
+				seq++;
+			}
+			if (penalty > 0) {
+				cycle += 1 + penalty;
+				slots = 0;
+				branchstall += penalty;
+			}
+			done++;
+			if (done == 1) firstpass = lastretire;
+			else {
+				stable = lastretire - previous == delta ? stable+1 : 0;
+				delta = lastretire - previous;
+			}
+			previous = lastretire;
+			if (stable >= 2) break;
+		}
+		double throughput = stable >= 2 ? delta 
+				: done > 1 ? (double) (lastretire - firstpass) / (done - 1) : firstpass;
+		
+		String bottleneck;
+		if (depstall == 0 && robstall == 0 && branchstall == 0) bottleneck = "issue width";
+		else if (depstall >= robstall && depstall >= branchstall) {
+			int worst = 0;
+			for (int i = 1; i < n; i++) if (lost[i] > lost[worst]) worst = i;
+			bottleneck = "dependency " + block.get(cause[worst]).getSource() + " -> " 
+					+ block.get(worst).getSource();
+		}
+		else if (robstall >= branchstall) bottleneck = "ROB full (" + rob + " entries)";
+		else bottleneck = "taken branch";
+		return new Report(first.getInstAddress(), first.getCodeLabel(), n, (int) firstpass, throughput, bottleneck);
+	}
+	
+	/* Latency, destination (-1 if none) and up to two source registers 
+	 * (0 if none, as r0 never makes anything wait) of instruction i
+	 */
+	private void operands(Instruction inst, int i, int[] latency, int[] dest, int[] sources) {
+		latency[i] = model.getLatency(inst);
+		Integer d = inst.getDestRegister();
+		dest[i] = d == null || d == 0 ? -1 : d;
+		Integer[] s = inst.getSourceRegisters();
+		for (int k = 0; k < s.length; k++) sources[2*i+k] = s[k];
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package assembler;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * 
+ * @author raul
+ *
+ * Memory initialization file for the VHDL testbenches. Each line holds a
+ * word address and a word, both in hex, to be read with textio hread:
+ * 
+ * <address> <word>
+ * 
+ * Words are Opcodes.bitsinst wide, which is both instruction_bits and 
+ * data_bits in core_defs.vhd, and big-endian like the raw image.
+ */
+public class VhdlInitWriter implements ObjectWriter {
+	private BufferedWriter out;
+	private int word = 0;
+	private int wordbytes = 0;
+	private int wordaddress = 0;
+	
+	public VhdlInitWriter(String path) throws IOException {
+		this.out = new BufferedWriter(new FileWriter(path), 1 << 16);
+	}
+
+	@Override
+	public void writeData(Integer address, byte[] bytes, Integer offset, Integer length) throws IOException {
+		for (int i = 0; i < length; i++) put(address + i, bytes[offset + i]);
+	}
+
+	@Override
+	public void writeFill(Integer address, Integer length, byte value) throws IOException {
+		for (int i = 0; i < length; i++) put(address + i, value);
+	}
+
+	@Override
+	public void writeRun(Integer address, Integer length, Integer pattern) throws IOException {
+		for (int i = 0; i < length; i++)
+			put(address + i, (byte) (pattern >>> (8 * (Opcodes.bytesinst - 1 - i%Opcodes.bytesinst))));
+	}
+
+	@Override
+	public void writeInstruction(Integer address, Integer word) throws IOException {
+		flush();
+		line(address, word);
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		out.close();
+	}
+	
+	private void put(int address, byte value) throws IOException {
+		int aligned = address & ~(Opcodes.bytesinst - 1);
+		if (wordbytes > 0 && aligned != wordaddress) flush();
+		wordaddress = aligned;
+		int shift = 8 * (Opcodes.bytesinst - 1 - (address - aligned));
+		word |= (value & 0xFF) << shift;
+		wordbytes++;
+	}
+	
+	private void flush() throws IOException {
+		if (wordbytes == 0) return;
+		line(wordaddress, word);
+		word = 0;
+		wordbytes = 0;
+	}
+	
+	private void line(int address, int value) throws IOException {
+		out.write(hex(address));
+		out.write(' ');
+		out.write(hex(value));
+		out.newLine();
+	}
+	
+	private static String hex(int value) {
+		String h = Integer.toHexString(value).toUpperCase();
+		return "00000000".substring(h.length()).concat(h);
+	}
+}
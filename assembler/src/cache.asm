@@ -0,0 +1,24 @@
+.data
+lol: .string "Lalalala"
+wut: .int 1235
+.text
+        movi    r2, #-1    ! negative int
+        movi    r2, #-1    ! repeated, from the cache
+        movi r2,#-1
+        movi    r2 , #-1   ! differs in spacing only
+        movi    r3, #-1    ! differs in a register
+        movhi   r2, #-1
+        movhi   r2, #-1
+        movi    r2, 0x-5
+        movi    r2, 0x-5
+        addd    r1, r2, r3
+        addd r1,r2,r3      ! same as above
+        addd    r1, r2, r4
+loop:   beq     r1, r0, loop
+        beq     r1, r0, loop
+again:  addd    r1, r2, r3 ! a label is not cached
+        jmp     again
+        jmp     again
+        ld      r5, r6, #-4
+        ld      r5, r6, #-4
+        sd      r5, r6, #-4
@@ -0,0 +1,21 @@
+.data
+count: .int 10
+msg: .string "hello world"
+one: .int 01
+table: .word 1, 2, 3
+buffer: .space 16
+.text
+start:  movi r1, count
+        movhi r1, #0
+        ld r2, r1, #0
+        movi r3, one
+        ld r4, r3, #0
+        movi r5, #0
+loop:   beq r2, r5, done
+        subd r2, r2, r4
+        addd r6, r6, r4
+        movd r7, r6
+        sd r7, r1, #0
+        jmp loop
+done:   nop
+        halt
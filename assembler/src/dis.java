@@ -0,0 +1,63 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+import java.io.IOException;
+
+import assembler.AssemblerParser;
+import assembler.Disassembler;
+
+/**
+ * @author Raul Vidal Ortiz
+ *
+ */
+public class dis {
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		Integer threads = 1;
+		Integer textbase = AssemblerParser.DATASEGSIZE;
+		int i = 0;
+		try {
+			while (i < args.length && args[i].startsWith("-")) {
+				if (i+1 >= args.length) usage();
+				if (args[i].equals("-j")) threads = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-base")) textbase = Integer.decode(args[++i]);
+				else usage();
+				i++;
+			}
+		} catch (NumberFormatException e) {
+			usage();
+		}
+		if (args.length - i != 2 || threads < 1) usage();
+		try {
+			new Disassembler(textbase, threads).disassemble(args[i], args[i+1]);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println(e.getMessage());
+			System.err.println("Error while disassembling " + args[i]);
+			System.exit(1);
+		}
+	}
+	
+	private static void usage() {
+		System.err.println("Usage: java -jar dis.jar [-j <threads>] [-base <text address>] <image.bin> <output.asm>");
+		System.exit(1);
+	}
+
+}
@@ -0,0 +1,13 @@
+.data
+lol: .string "Lalalala"
+wut: .int 1235
+.text
+        movi    r1, #3     ! with -codelayout -profile layout.prof -listing
+        movi    r2, #1
+top:    beq     r1, r0, out
+        jmp     body
+skip:   nop                ! never run, moved to the end
+        halt
+body:   subd    r1, r1, r2
+        jmp     top
+out:    halt
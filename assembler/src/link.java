@@ -0,0 +1,59 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+import java.util.ArrayList;
+import java.util.List;
+
+import assembler.Linker;
+
+/**
+ * @author Raul Vidal Ortiz
+ *
+ */
+public class link {
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		Integer threads = Runtime.getRuntime().availableProcessors();
+		int i = 0;
+		while (i < args.length && args[i].startsWith("-")) {
+			if (i+1 >= args.length) usage();
+			if (args[i].equals("-j")) threads = Integer.parseInt(args[++i]);
+			else usage();
+			i++;
+		}
+		if (args.length - i < 2) usage();
+		List<String> objects = new ArrayList<String>();
+		for (int j = i+1; j < args.length; j++) objects.add(args[j]);
+		try {
+			new Linker(threads).link(objects, args[i]);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.err.println(e.getMessage());
+			System.err.println("Error while linking " + args[i]);
+			System.exit(1);
+		}
+	}
+	
+	private static void usage() {
+		System.err.println("Usage: java -jar link.jar [-j <threads>] <output.bin> <object.o>...");
+		System.exit(1);
+	}
+
+}
@@ -0,0 +1,19 @@
+.data
+lol: .string "Lalalala"
+wut: .int 1235
+.text
+.include "macro.inc"
+        movi    r1, #1     ! step for spin, from macro.inc
+        spin    r2, #3
+        spin    r3, #4
+        spin    r4, #5
+        spin    r5, #6
+        spin    r6, #7
+        spin    r7, #8
+        spin    r8, #9
+        spin    r9, #10
+        spin    r10, #11   ! \@ is 9 here
+        spin    r11, #12   ! and 10 here: loop10 is one label, not loop1
+        spin    r12, #13
+main:   spin    r13, 0x-5  ! label placed on the first expanded line
+        halt
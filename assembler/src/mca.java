@@ -0,0 +1,109 @@
+/*******************************************************************************
+ *     Copyright (c) 2016 Raul Vidal Ortiz.
+ *     
+ *     This file is part of Assembler.
+ *
+ *     Assembler is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Assembler is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Assembler.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import assembler.AssemblerParser;
+import assembler.Disassembler;
+import assembler.Instruction;
+import assembler.PipelineModel;
+import assembler.ThroughputAnalyzer;
+
+/**
+ * @author Raul Vidal Ortiz
+ *
+ * Static throughput analysis: prints, for every basic block of a source
+ * file or of an image (.bin), its estimated cycles on the pipeline and
+ * what limits it (see assembler.ThroughputAnalyzer).
+ */
+public class mca {
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		String pipelinefile = null;
+		Integer textbase = AssemblerParser.DATASEGSIZE;
+		Integer iterations = 100;
+		Integer top = null;
+		int i = 0;
+		try {
+			while (i < args.length && args[i].startsWith("-")) {
+				if (i+1 >= args.length) usage();
+				if (args[i].equals("-pipeline")) pipelinefile = args[++i];
+				else if (args[i].equals("-base")) textbase = Integer.decode(args[++i]);
+				else if (args[i].equals("-iterations")) iterations = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-top")) top = Integer.parseInt(args[++i]);
+				else usage();
+				i++;
+			}
+		} catch (NumberFormatException e) {
+			usage();
+		}
+		if (args.length - i != 1 || iterations < 1) usage();
+		String path = args[i];
+		try {
+			PipelineModel model = pipelinefile == null ? new PipelineModel() : PipelineModel.load(pipelinefile);
+			List<Instruction> instructions;
+			if (path.endsWith(".bin")) instructions = new Disassembler(textbase, 1).instructions(path);
+			else {
+				AssemblerParser assembler = AssemblerParser.getAssemblerParser();
+				if (!assembler.parseFile(path)) System.exit(1);
+				instructions = assembler.getInstructions();
+			}
+			long start = System.nanoTime();
+			List<ThroughputAnalyzer.Report> reports = new ThroughputAnalyzer(model, iterations).analyze(instructions);
+			long elapsed = (System.nanoTime() - start) / 1000000;
+			List<ThroughputAnalyzer.Report> shown = new ArrayList<ThroughputAnalyzer.Report>(reports);
+			if (top != null) {
+				Collections.sort(shown, new Comparator<ThroughputAnalyzer.Report>() {
+					@Override
+					public int compare(ThroughputAnalyzer.Report a, ThroughputAnalyzer.Report b) {
+						return b.throughput.compareTo(a.throughput);
+					}
+				});
+				shown = shown.subList(0, Math.min(top, shown.size()));
+			}
+			Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+			out.write(String.format("%-10s  %-12s %6s %7s %9s %5s  %s%n", 
+					"address", "label", "insts", "cycles", "cyc/iter", "IPC", "bottleneck"));
+			for (ThroughputAnalyzer.Report r : shown) {
+				out.write(String.format("0x%08x  %-12s %6d %7d %9.2f %5.2f  %s%n", r.address, 
+						r.label == null ? "-" : r.label, r.instructions, r.cycles, r.throughput, r.getIPC(), r.bottleneck));
+			}
+			out.write(String.format("%d blocks, %d instructions, analyzed in %d ms%n", 
+					reports.size(), instructions.size(), elapsed));
+			out.flush();
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Error while reading " + (pipelinefile == null ? path : pipelinefile + " or " + path));
+			System.exit(1);
+		}
+	}
+	
+	private static void usage() {
+		System.err.println("Usage: java -jar mca.jar [-pipeline <file>] [-base <text address>] [-iterations <n>] [-top <n>] <source.asm | image.bin>");
+		System.exit(1);
+	}
+}
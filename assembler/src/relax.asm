@@ -0,0 +1,201 @@
+.data
+lol: .string "Lalalala"
+wut: .int 1235
+.text
+.macro  nops
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+        nop
+.endm
+top:    movi    r1, #1       ! far is 8257 words back and last, relaxed with its label kept
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+        nops
+far:    beq     r1, r1, top
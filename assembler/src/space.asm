@@ -0,0 +1,15 @@
+.data 0x100, 0x600
+lol: .string "Lalalala"
+wut: .int 1235
+tab: .word 1, -2, 0x7fffffff, 0xfffffff0
+buf: .space 6
+pad: .fill 3, 0x11223344
+zer: .fill 2
+big: .space 0x400
+end: .int 4321
+.text 0x800
+        movi    r1, buf    ! .space 6 takes 8 bytes
+        movi    r2, pad
+        movi    r3, end    ! after 0x400 bytes of .space
+        ld      r4, r3, #0
+        halt
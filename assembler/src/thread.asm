@@ -0,0 +1,14 @@
+.data
+lol: .string "Lalalala"
+wut: .int 1235
+.text
+        movi    r1, #1     ! assembled with -thread
+        beq     r1, r0, hop
+        jmp     hop        ! becomes jmp done
+back:   subd    r1, r1, r1
+        halt
+hop:    jmp     mid
+mid:    jmp     done
+        nop
+done:   beq     r1, r0, back
+        jmp     done       ! done is a beq, left alone
@@ -137,12 +137,13 @@ package body functions_and_types is
             for k in i-1 downto 0 loop
                 and_l2(i,i) := and_l2(i,i) and or_l1(k);
             end loop;
-            and_l2(i,i) := and_l2(i,i) and ci;
+            -- a carry generated at bit 0 travels the same way as the carry in
+            and_l2(i,i) := and_l2(i,i) and (ci or and_l1(0));
             coi(i) := coi(i) or and_l2(i,i);
         end loop;
         
         /* Add bits */
-        result(result'left) := coi(coi'left-1);
+        result(result'left) := coi(coi'left);
         for i in result'left-1 downto 1 loop
             result(i) := coi(i) xor aa(i) xor bb(i);
         end loop;
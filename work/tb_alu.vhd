@@ -82,6 +82,16 @@ begin
             --OTHER NON-AVAILABLE OPERATION CODE
             (x"00_00_00_00",x"12_34_56_78","1111",'0','1','0','0',x"00_00_00_00")
 		);
+		-- Bulk vectors written by the Java golden model (alumodel/src, "make vectors"),
+		-- one record per line in the same field order as pattern_type above.
+		file vectors                    : text;
+		variable status                 : file_open_status;
+		variable l                      : line;
+		variable v_op1,v_op2,v_result   : std_logic_vector(data_bits-1 downto 0);
+		variable v_aluop                : std_logic_vector(alu_op_bits-1 downto 0);
+		variable v_carry,v_zero         : std_logic;
+		variable v_neg,v_ovfl           : std_logic;
+		variable checked,errors         : natural := 0;
 		
 		begin
 		-- Assignments are done in parallel, but each test is processed sequentially
@@ -95,6 +105,36 @@ begin
             assert (overflow = input_tests(test).ovfl) report "Overflow flag assertion failed" severity failure;
             assert (result = input_tests(test).result) report "Result assertion failed" severity failure;
 		end loop;
+		
+		file_open(status, vectors, "alu_vectors.txt", read_mode);
+		if status = open_ok then
+			while not endfile(vectors) loop
+				readline(vectors, l);
+				hread(l, v_op1);
+				hread(l, v_op2);
+				read(l, v_aluop);
+				read(l, v_carry);
+				read(l, v_zero);
+				read(l, v_neg);
+				read(l, v_ovfl);
+				hread(l, v_result);
+				op1 <= v_op1;
+				op2 <= v_op2;
+				aluop <= v_aluop;
+				wait for 1 ns;
+				checked := checked + 1;
+				if carry /= v_carry or zero /= v_zero or negative /= v_neg 
+						or overflow /= v_ovfl or result /= v_result then
+					errors := errors + 1;
+					report "Vector " & integer'image(checked) & " failed: " & to_hstring(v_op1) & " " & 
+						to_hstring(v_op2) & " " & to_string(v_aluop) & " gave " & to_hstring(result) 
+						severity error;
+				end if;
+			end loop;
+			file_close(vectors);
+			report integer'image(checked) & " file vectors checked, " & integer'image(errors) & " failed" severity note;
+			assert errors = 0 report "File vector assertion failed" severity failure;
+		end if;
 		assert false report "end of test" severity note;
 		wait; -- Wait without timeout to end simulation
 	end process;